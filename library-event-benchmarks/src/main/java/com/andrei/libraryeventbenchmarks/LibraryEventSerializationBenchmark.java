@@ -0,0 +1,168 @@
+package com.andrei.libraryeventbenchmarks;
+
+import com.andrei.libraryeventbenchmarks.domain.Book;
+import com.andrei.libraryeventbenchmarks.domain.LibraryEvent;
+import com.andrei.libraryeventbenchmarks.domain.LibraryEventType;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+//Encode/decode cost of a LibraryEvent + Book the way the applications do it today (ObjectMapper and String)
+//against pre-built ObjectWriter/ObjectReader, the Afterburner and Blackbird modules and byte[] instead of String.
+//mvn -pl library-event-benchmarks -am package && java -jar library-event-benchmarks/target/benchmarks.jar -prof gc
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LibraryEventSerializationBenchmark {
+
+    public enum PayloadSize {
+        //the postman collection payload, about 100 bytes
+        SMALL(1, 1),
+        //long title and an author list, about 1KB
+        MEDIUM(12, 8),
+        //a catalogue entry with a blurb folded into the name, about 8KB
+        LARGE(120, 40);
+
+        private final int nameRepeats;
+        private final int authorRepeats;
+
+        PayloadSize(int nameRepeats, int authorRepeats) {
+            this.nameRepeats = nameRepeats;
+            this.authorRepeats = authorRepeats;
+        }
+    }
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private PayloadSize payloadSize;
+
+    private LibraryEvent libraryEvent;
+    private String json;
+    private byte[] jsonBytes;
+
+    private ObjectMapper defaultMapper;
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private ObjectWriter afterburnerWriter;
+    private ObjectReader afterburnerReader;
+    private ObjectWriter blackbirdWriter;
+    private ObjectReader blackbirdReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        libraryEvent = LibraryEvent.builder()
+                .libraryEventId(766844942799310848L)
+                .libraryEventType(LibraryEventType.UPDATE)
+                .book(Book.builder()
+                        .bookId(456)
+                        .bookName("My kafka book ".repeat(payloadSize.nameRepeats * 5).trim())
+                        .bookAuthor("Andrei, ".repeat(payloadSize.authorRepeats).trim())
+                        .build())
+                .build();
+
+        //configured like the Spring Boot ObjectMapper of the applications
+        defaultMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        writer = defaultMapper.writerFor(LibraryEvent.class);
+        reader = defaultMapper.readerFor(LibraryEvent.class);
+
+        final ObjectMapper afterburnerMapper = defaultMapper.copy().registerModule(new AfterburnerModule());
+        afterburnerWriter = afterburnerMapper.writerFor(LibraryEvent.class);
+        afterburnerReader = afterburnerMapper.readerFor(LibraryEvent.class);
+
+        final ObjectMapper blackbirdMapper = defaultMapper.copy().registerModule(new BlackbirdModule());
+        blackbirdWriter = blackbirdMapper.writerFor(LibraryEvent.class);
+        blackbirdReader = blackbirdMapper.readerFor(LibraryEvent.class);
+
+        json = defaultMapper.writeValueAsString(libraryEvent);
+        jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    //what LibraryEventProducer does on every send
+    @Benchmark
+    public String encodeObjectMapperString() throws IOException {
+        return defaultMapper.writeValueAsString(libraryEvent);
+    }
+
+    @Benchmark
+    public byte[] encodeObjectMapperBytes() throws IOException {
+        return defaultMapper.writeValueAsBytes(libraryEvent);
+    }
+
+    @Benchmark
+    public String encodeObjectWriterString() throws IOException {
+        return writer.writeValueAsString(libraryEvent);
+    }
+
+    @Benchmark
+    public byte[] encodeObjectWriterBytes() throws IOException {
+        return writer.writeValueAsBytes(libraryEvent);
+    }
+
+    //what StringSerializer adds on top of writeValueAsString
+    @Benchmark
+    public byte[] encodeObjectWriterStringToBytes() throws IOException {
+        return writer.writeValueAsString(libraryEvent).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeAfterburnerBytes() throws IOException {
+        return afterburnerWriter.writeValueAsBytes(libraryEvent);
+    }
+
+    @Benchmark
+    public byte[] encodeBlackbirdBytes() throws IOException {
+        return blackbirdWriter.writeValueAsBytes(libraryEvent);
+    }
+
+    //what the consumer did before the typed deserializer, StringDeserializer then readValue
+    @Benchmark
+    public LibraryEvent decodeObjectMapperString() throws IOException {
+        return defaultMapper.readValue(new String(jsonBytes, StandardCharsets.UTF_8), LibraryEvent.class);
+    }
+
+    @Benchmark
+    public LibraryEvent decodeObjectMapperBytes() throws IOException {
+        return defaultMapper.readValue(jsonBytes, LibraryEvent.class);
+    }
+
+    @Benchmark
+    public LibraryEvent decodeObjectReaderString() throws IOException {
+        return reader.readValue(json);
+    }
+
+    //what LibraryEventDeserializer does now
+    @Benchmark
+    public LibraryEvent decodeObjectReaderBytes() throws IOException {
+        return reader.readValue(jsonBytes);
+    }
+
+    @Benchmark
+    public LibraryEvent decodeAfterburnerBytes() throws IOException {
+        return afterburnerReader.readValue(jsonBytes);
+    }
+
+    @Benchmark
+    public LibraryEvent decodeBlackbirdBytes() throws IOException {
+        return blackbirdReader.readValue(jsonBytes);
+    }
+}
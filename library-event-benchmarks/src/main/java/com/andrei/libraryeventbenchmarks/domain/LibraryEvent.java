@@ -0,0 +1,18 @@
+package com.andrei.libraryeventbenchmarks.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//copy of the producer domain class, the boot applications are repackaged jars and can not be depended on
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class LibraryEvent {
+
+    private Long libraryEventId;
+    private LibraryEventType libraryEventType;
+    private Book book;
+}
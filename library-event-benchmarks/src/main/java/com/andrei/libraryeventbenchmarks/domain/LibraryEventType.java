@@ -0,0 +1,6 @@
+package com.andrei.libraryeventbenchmarks.domain;
+
+public enum LibraryEventType {
+    NEW,
+    UPDATE
+}
@@ -0,0 +1,366 @@
+package andrei.libraryeventconsumer.catalog;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.repository.BookRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+//Current state of every book, kept in memory by the consumer after each successful save.
+//A book is a slot in a few parallel primitive arrays, found through an int -> int open addressing map,
+//names live as UTF-8 in one byte arena (heap or direct) and each distinct author is stored once.
+//Books of an author are chained through the slots, so the author index costs two ints per book.
+@Component
+@Slf4j
+public class BookCatalog {
+
+    private static final int NONE = -1;
+    private static final long NULL_NAME = pack(0, NONE);
+    //rough per author cost of the String and its dictionary entry on top of the characters
+    private static final int AUTHOR_OVERHEAD_BYTES = 96;
+
+    private final LibraryEventsConsumerProperties.Catalog catalog;
+    private final BookRepository bookRepository;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    //book id -> slot
+    private final IntIntHashMap slots;
+    private int size;
+    private int[] bookIds;
+    //offset in the name arena << 32 | length, a length of -1 is a null name
+    private long[] names;
+    private int[] authors;
+    private int[] nextByAuthor;
+    private int[] previousByAuthor;
+
+    private ByteBuffer nameArena;
+    private long garbageBytes;
+
+    private final Map<String, Integer> authorIds = new HashMap<>();
+    private final List<String> authorNames = new ArrayList<>();
+    private int[] authorHeads = new int[16];
+    private int[] authorCounts = new int[16];
+    private long authorBytes;
+
+    public BookCatalog(LibraryEventsConsumerProperties consumerProperties, BookRepository bookRepository,
+                       TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.catalog = consumerProperties.getCatalog();
+        this.bookRepository = bookRepository;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        final int initialCapacity = Math.max(16, catalog.getInitialCapacity());
+        this.slots = new IntIntHashMap(initialCapacity);
+        this.bookIds = new int[initialCapacity];
+        this.names = new long[initialCapacity];
+        this.authors = new int[initialCapacity];
+        this.nextByAuthor = new int[initialCapacity];
+        this.previousByAuthor = new int[initialCapacity];
+        this.nameArena = allocateArena(initialCapacity * 32);
+
+        Gauge.builder("library.events.catalog.memory", this, BookCatalog::memoryFootprint)
+                .baseUnit("bytes")
+                .tag("storage", catalog.isOffHeap() ? "off-heap" : "heap")
+                .register(meterRegistry);
+        Gauge.builder("library.events.catalog.books", this, BookCatalog::size)
+                .register(meterRegistry);
+    }
+
+    public void put(Book book) {
+        if(!catalog.isEnabled() || book == null || book.getBookId() == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            put(book.getBookId(), book.getBookName(), book.getBookAuthor(), true);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(Collection<Book> books) {
+        books.forEach(this::put);
+    }
+
+    public Optional<Book> find(int bookId) {
+        lock.readLock().lock();
+        try {
+            final int slot = slots.get(bookId);
+            return slot == IntIntHashMap.NO_VALUE ? Optional.empty() : Optional.of(toBook(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //newest books of the author first
+    public Page<Book> findByAuthor(String bookAuthor, Pageable pageable) {
+        lock.readLock().lock();
+        try {
+            final Integer authorId = authorIds.get(bookAuthor);
+            if(authorId == null) {
+                return Page.empty(pageable);
+            }
+            final List<Book> books = new ArrayList<>(pageable.getPageSize());
+            int slot = authorHeads[authorId];
+            for(long skipped = 0; slot != NONE && skipped < pageable.getOffset(); skipped++) {
+                slot = nextByAuthor[slot];
+            }
+            for(; slot != NONE && books.size() < pageable.getPageSize(); slot = nextByAuthor[slot]) {
+                books.add(toBook(slot));
+            }
+            return new PageImpl<>(books, pageable, authorCounts[authorId]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //bytes held by the arrays, the map, the name arena and (approximately) the author dictionary
+    public long memoryFootprint() {
+        lock.readLock().lock();
+        try {
+            return slots.memoryFootprint()
+                    + (long) bookIds.length * Integer.BYTES * 4
+                    + (long) names.length * Long.BYTES
+                    + (long) authorHeads.length * Integer.BYTES * 2
+                    + nameArena.capacity()
+                    + authorBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //listeners may already be writing, what they put is newer than the DB rows read here and is not overwritten
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if(!catalog.isEnabled()) {
+            return;
+        }
+        final long startNanos = System.nanoTime();
+        readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (Stream<BookRepository.BookView> books = bookRepository.streamAllBy()) {
+                books.forEach(book -> {
+                    lock.writeLock().lock();
+                    try {
+                        put(book.getBookId(), book.getBookName(), book.getBookAuthor(), false);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                });
+            }
+        });
+        log.info("Book catalog rebuilt with {} books, {} bytes in {} ms", size(), memoryFootprint(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    private void put(int bookId, String bookName, String bookAuthor, boolean overwrite) {
+        int slot = slots.get(bookId);
+        if(slot == IntIntHashMap.NO_VALUE) {
+            slot = newSlot(bookId);
+        } else if(!overwrite) {
+            return;
+        }
+        writeName(slot, bookName);
+        final int authorId = authorId(bookAuthor);
+        if(authors[slot] != authorId) {
+            unlinkAuthor(slot);
+            linkAuthor(slot, authorId);
+        }
+    }
+
+    private int newSlot(int bookId) {
+        if(size == bookIds.length) {
+            final int capacity = bookIds.length << 1;
+            bookIds = Arrays.copyOf(bookIds, capacity);
+            names = Arrays.copyOf(names, capacity);
+            authors = Arrays.copyOf(authors, capacity);
+            nextByAuthor = Arrays.copyOf(nextByAuthor, capacity);
+            previousByAuthor = Arrays.copyOf(previousByAuthor, capacity);
+        }
+        final int slot = size++;
+        bookIds[slot] = bookId;
+        names[slot] = NULL_NAME;
+        authors[slot] = NONE;
+        nextByAuthor[slot] = NONE;
+        previousByAuthor[slot] = NONE;
+        slots.put(bookId, slot);
+        return slot;
+    }
+
+    //a name that fits is rewritten in place, a longer one is appended and the old bytes become garbage
+    private void writeName(int slot, String bookName) {
+        final int oldLength = length(names[slot]);
+        if(bookName == null) {
+            garbageBytes += Math.max(0, oldLength);
+            names[slot] = NULL_NAME;
+            return;
+        }
+        final byte[] bytes = bookName.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length <= oldLength) {
+            final int offset = offset(names[slot]);
+            nameArena.put(offset, bytes);
+            garbageBytes += oldLength - bytes.length;
+            names[slot] = pack(offset, bytes.length);
+            return;
+        }
+        garbageBytes += Math.max(0, oldLength);
+        names[slot] = NULL_NAME;
+        ensureArena(bytes.length);
+        final int offset = nameArena.position();
+        nameArena.put(bytes);
+        names[slot] = pack(offset, bytes.length);
+    }
+
+    private void ensureArena(int bytes) {
+        if(nameArena.remaining() >= bytes) {
+            return;
+        }
+        if(garbageBytes > nameArena.position() / 2) {
+            nameArena = copyLiveNames(nameArena.capacity());
+            if(nameArena.remaining() >= bytes) {
+                return;
+            }
+        }
+        final long capacity = Math.max(2L * nameArena.capacity(), (long) nameArena.position() + bytes);
+        if(capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Book catalog name arena is full at " + nameArena.position() + " bytes");
+        }
+        nameArena = copyLiveNames((int) capacity);
+    }
+
+    private ByteBuffer copyLiveNames(int capacity) {
+        final ByteBuffer arena = allocateArena(capacity);
+        for(int slot = 0; slot < size; slot++) {
+            final int length = length(names[slot]);
+            if(length >= 0) {
+                final int offset = arena.position();
+                arena.put(arena.position(), nameArena, offset(names[slot]), length);
+                arena.position(offset + length);
+                names[slot] = pack(offset, length);
+            }
+        }
+        garbageBytes = 0;
+        return arena;
+    }
+
+    private ByteBuffer allocateArena(int capacity) {
+        return catalog.isOffHeap() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private int authorId(String bookAuthor) {
+        if(bookAuthor == null) {
+            return NONE;
+        }
+        final Integer authorId = authorIds.get(bookAuthor);
+        if(authorId != null) {
+            return authorId;
+        }
+        final int newAuthorId = authorNames.size();
+        if(newAuthorId == authorHeads.length) {
+            authorHeads = Arrays.copyOf(authorHeads, newAuthorId << 1);
+            authorCounts = Arrays.copyOf(authorCounts, newAuthorId << 1);
+        }
+        authorHeads[newAuthorId] = NONE;
+        authorCounts[newAuthorId] = 0;
+        authorIds.put(bookAuthor, newAuthorId);
+        authorNames.add(bookAuthor);
+        authorBytes += 2L * bookAuthor.length() + AUTHOR_OVERHEAD_BYTES;
+        return newAuthorId;
+    }
+
+    private void linkAuthor(int slot, int authorId) {
+        authors[slot] = authorId;
+        if(authorId == NONE) {
+            return;
+        }
+        final int head = authorHeads[authorId];
+        previousByAuthor[slot] = NONE;
+        nextByAuthor[slot] = head;
+        if(head != NONE) {
+            previousByAuthor[head] = slot;
+        }
+        authorHeads[authorId] = slot;
+        authorCounts[authorId]++;
+    }
+
+    private void unlinkAuthor(int slot) {
+        final int authorId = authors[slot];
+        if(authorId == NONE) {
+            return;
+        }
+        final int previous = previousByAuthor[slot];
+        final int next = nextByAuthor[slot];
+        if(previous != NONE) {
+            nextByAuthor[previous] = next;
+        } else {
+            authorHeads[authorId] = next;
+        }
+        if(next != NONE) {
+            previousByAuthor[next] = previous;
+        }
+        authorCounts[authorId]--;
+        authors[slot] = NONE;
+        nextByAuthor[slot] = NONE;
+        previousByAuthor[slot] = NONE;
+    }
+
+    private Book toBook(int slot) {
+        return Book.builder()
+                .bookId(bookIds[slot])
+                .bookName(readName(names[slot]))
+                .bookAuthor(authors[slot] == NONE ? null : authorNames.get(authors[slot]))
+                .build();
+    }
+
+    private String readName(long name) {
+        final int length = length(name);
+        if(length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        nameArena.get(offset(name), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long pack(int offset, int length) {
+        return ((long) offset << 32) | (length & 0xFFFFFFFFL);
+    }
+
+    private static int offset(long name) {
+        return (int) (name >>> 32);
+    }
+
+    private static int length(long name) {
+        return (int) name;
+    }
+}
@@ -0,0 +1,106 @@
+package andrei.libraryeventconsumer.catalog;
+
+//int -> int map with open addressing and linear probing. Two int arrays instead of a boxed key, a boxed value
+//and an entry object per mapping, so a mapping costs 8 to 16 bytes instead of ~50.
+final class IntIntHashMap {
+
+    static final int NO_VALUE = -1;
+
+    //0 marks an empty bucket, a real 0 key is kept aside
+    private static final int FREE_KEY = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int threshold;
+    private int size;
+    private boolean hasFreeKey;
+    private int freeKeyValue = NO_VALUE;
+
+    IntIntHashMap(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+    int get(int key) {
+        if(key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : NO_VALUE;
+        }
+        for(int index = bucket(key); ; index = (index + 1) & mask) {
+            final int current = keys[index];
+            if(current == FREE_KEY) {
+                return NO_VALUE;
+            }
+            if(current == key) {
+                return values[index];
+            }
+        }
+    }
+
+    void put(int key, int value) {
+        if(key == FREE_KEY) {
+            if(!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return;
+        }
+        for(int index = bucket(key); ; index = (index + 1) & mask) {
+            final int current = keys[index];
+            if(current == key) {
+                values[index] = value;
+                return;
+            }
+            if(current == FREE_KEY) {
+                keys[index] = key;
+                values[index] = value;
+                if(++size >= threshold) {
+                    rehash(keys.length << 1);
+                }
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long memoryFootprint() {
+        return 2L * keys.length * Integer.BYTES;
+    }
+
+    private void rehash(int capacity) {
+        final int[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(capacity);
+        size = hasFreeKey ? 1 : 0;
+        for(int index = 0; index < oldKeys.length; index++) {
+            if(oldKeys[index] != FREE_KEY) {
+                put(oldKeys[index], oldValues[index]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    //sequential ids would otherwise fill neighbouring buckets and make the probe runs long
+    private int bucket(int key) {
+        final int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = 16;
+        while(capacity * LOAD_FACTOR <= expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -1,13 +1,28 @@
 package andrei.libraryeventconsumer.config;
 
 
+import andrei.libraryeventconsumer.consumer.KeyOrderedParallelProcessor;
+import andrei.libraryeventconsumer.consumer.PartitionWarmUpListener;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.serialization.LibraryEventSerializer;
+import andrei.libraryeventconsumer.service.LibraryEventsDeduplicator;
+import andrei.libraryeventconsumer.service.LibraryEventsQueryService;
 import andrei.libraryeventconsumer.service.LibraryEventsService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.Serializer;
 import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.NestedExceptionUtils;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.dao.RecoverableDataAccessException;
@@ -15,53 +30,121 @@ import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
+import org.springframework.kafka.listener.RecoveringBatchErrorHandler;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
 import org.springframework.retry.RetryPolicy;
 import org.springframework.retry.backoff.FixedBackOffPolicy;
+import org.springframework.retry.listener.RetryListenerSupport;
 import org.springframework.retry.policy.SimpleRetryPolicy;
 import org.springframework.retry.support.RetryTemplate;
+import org.springframework.util.StringUtils;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 
 @Configuration
 @EnableKafka
 @RequiredArgsConstructor
 @Slf4j
+@EnableConfigurationProperties(LibraryEventsConsumerProperties.class)
 public class LibraryEventConsumerConfig {
 
     private final KafkaProperties kafkaProperties;
     private final LibraryEventsService libraryEventsService;
+    private final LibraryEventsConsumerProperties consumerProperties;
+    private final LibraryEventsDeduplicator libraryEventsDeduplicator;
+    private final MeterRegistry meterRegistry;
+    private final LibraryEventsQueryService queryService;
+
+    private static final int BATCH_RETRIES = 2;
 
     @Bean
     ConcurrentKafkaListenerContainerFactory<?, ?> kafkaListenerContainerFactory(
             ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
-            ObjectProvider<ConsumerFactory<Object, Object>> kafkaConsumerFactory) {
+            ObjectProvider<ConsumerFactory<Object, Object>> kafkaConsumerFactory,
+            ObjectProvider<KeyOrderedParallelProcessor> keyOrderedParallelProcessor,
+            ObjectProvider<KafkaTransactionManager<Long, byte[]>> kafkaTransactionManager) {
         ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        configurer.configure(factory, kafkaConsumerFactory
-                .getIfAvailable(() -> new DefaultKafkaConsumerFactory<>(kafkaProperties.buildConsumerProperties())));
+        final ConsumerFactory<Object, Object> consumerFactory = kafkaConsumerFactory
+                .getIfAvailable(() -> new DefaultKafkaConsumerFactory<>(kafkaProperties.buildConsumerProperties()));
+        configurer.configure(factory, consumerFactory);
+        //spring-kafka 2.7 leaves the factory's consumer property overrides out of the containers it creates
+        factory.setContainerCustomizer(container -> container.getContainerProperties().getKafkaConsumerProperties()
+                .putAll(factory.getContainerProperties().getKafkaConsumerProperties()));
+        if(isCooperative()) {
+            configureCooperativeRebalance(factory);
+        }
         factory.setConcurrency(3); //not recommended for cloud environment
+        final ConsumerAwareRebalanceListener rebalanceListener = rebalanceListener(keyOrderedParallelProcessor.getIfAvailable());
+        if(rebalanceListener != null) {
+            factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
+        }
+
+        //the parallel lanes complete offsets out of order, a high-water mark there would drop records a slower lane
+        //has not applied yet, so that mode has no dedupe and re-applies what the broker redelivers
+        if(consumerProperties.getMode() != LibraryEventsConsumerProperties.Mode.PARALLEL) {
+            //duplicates are discarded before the listener and so before any JPA work or DLT send, the container has
+            //already deserialized them since a deserializer never sees the offset
+            factory.setRecordFilterStrategy(recordFilterStrategy(libraryEventsDeduplicator));
+            factory.setAckDiscarded(true);
+        }
+
+        if(consumerProperties.isExactlyOnce() && consumerProperties.getMode() != LibraryEventsConsumerProperties.Mode.BATCH) {
+            throw new IllegalStateException("Exactly-once delivery needs library-events.consumer.mode=batch, it commits once per poll");
+        }
+        if(consumerProperties.getRetry().getMode() == LibraryEventsConsumerProperties.RetryMode.TOPICS
+                && consumerProperties.getMode() != LibraryEventsConsumerProperties.Mode.RECORD) {
+            //the batch and parallel listeners retry and recover on their own, the retry topics would never see a failure
+            throw new IllegalStateException("Retry topics need library-events.consumer.mode=record, not " + consumerProperties.getMode());
+        }
+        if(consumerProperties.getPersistenceMode() == LibraryEventsConsumerProperties.PersistenceMode.EVENT_LOG) {
+            checkEventLogOrdering();
+        }
+        if(consumerProperties.getMode() == LibraryEventsConsumerProperties.Mode.BATCH) {
+            configureBatchListener(factory, kafkaTransactionManager.getIfAvailable());
+            return factory;
+        }
+        if(consumerProperties.getMode() == LibraryEventsConsumerProperties.Mode.PARALLEL) {
+            configureParallelListener(factory, keyOrderedParallelProcessor.getObject());
+            return factory;
+        }
+        if(consumerProperties.getRetry().getMode() == LibraryEventsConsumerProperties.RetryMode.TOPICS) {
+            //retries and the DLT are handled by the retry topic containers, nothing may block the main partition
+            return factory;
+        }
+
         factory.setErrorHandler((thrownException, consumerRecord) -> {
             log.info("Exception in consumerConfig is {} and the record is {}", thrownException.getMessage(), consumerRecord);
+            //the container rejects a record the ErrorHandlingDeserializer could not read before the retry template runs
+            if(consumerRecord != null && isDeserializationFailure(thrownException)) {
+                libraryEventsService.handleRecovery((ConsumerRecord<Long, LibraryEvent>) consumerRecord, thrownException, 1);
+            }
         });
         factory.setRetryTemplate(retryTemplate());
         factory.setRecoveryCallback(retryContext -> {
+            final ConsumerRecord<Long, LibraryEvent> consumerRecord = (ConsumerRecord<Long, LibraryEvent>) retryContext.getAttribute("record");
             if(retryContext.getLastThrowable().getCause() instanceof RecoverableDataAccessException rdae) {
                 //Invoke the recovery logic
                 log.info("Inside the recoverable logic");
-
-         /*       Arrays.asList(retryContext.attributeNames())
-                        .forEach(attribute -> {
-                            log.info("Attribute name is : {} ", attribute);
-                            log.info("Attribute Value is : {} ", retryContext.getAttribute(attribute));
-                        });*/
-                ConsumerRecord<Integer, String> consumerRecord = (ConsumerRecord<Integer, String>) retryContext.getAttribute("record");
-                libraryEventsService.handleRecovery(consumerRecord);
-
             } else {
                 log.info("Inside the non recoverable logic");
-                throw new RuntimeException(retryContext.getLastThrowable().getMessage());
             }
+            //both end up in the DLT with the exception and attempt count, instead of being retried forever or only logged
+            libraryEventsService.handleRecovery(consumerRecord, retryContext.getLastThrowable(), retryContext.getRetryCount());
 
             return null;
         });
@@ -72,6 +155,153 @@ public class LibraryEventConsumerConfig {
         return factory;
     }
 
+    private void configureBatchListener(ConcurrentKafkaListenerContainerFactory<Object, Object> factory,
+                                        KafkaTransactionManager<Long, byte[]> kafkaTransactionManager) {
+        final LibraryEventsConsumerProperties.Batch batch = consumerProperties.getBatch();
+        factory.setBatchListener(true);
+
+        //the poll returns once either batch.size records or fetch-min-bytes are available, or max-wait has elapsed;
+        //added to the cooperative rebalance overrides, if any
+        final Properties batchConsumerProperties = factory.getContainerProperties().getKafkaConsumerProperties();
+        batchConsumerProperties.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, batch.getSize());
+        batchConsumerProperties.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, (int) batch.getMaxWait().toMillis());
+        batchConsumerProperties.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, batch.getFetchMinBytes());
+        if(kafkaTransactionManager != null) {
+            batchConsumerProperties.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        }
+
+        if(kafkaTransactionManager != null) {
+            //one transaction per poll, the offsets are sent to it instead of committed, so they commit together with the DLT records
+            factory.getContainerProperties().setTransactionManager(kafkaTransactionManager);
+            factory.getContainerProperties().setEosMode(ContainerProperties.EOSMode.BETA);
+            //a rolled back batch is polled again as a whole, after a pause instead of in a hot loop
+            factory.setAfterRollbackProcessor(new DefaultAfterRollbackProcessor<>(new FixedBackOff(1000L, FixedBackOff.UNLIMITED_ATTEMPTS)));
+            return;
+        }
+
+        //records before the failed index are committed, the failed one is retried and then recovered on its own;
+        //an invalid UPDATE fails the same way every time, it is recovered on the first attempt
+        final RecoveringBatchErrorHandler batchErrorHandler = new RecoveringBatchErrorHandler((consumerRecord, exception) -> {
+            if(LibraryEventsService.isRecoverable(exception)) {
+                log.info("Inside the recoverable logic");
+            } else {
+                log.info("Inside the non recoverable logic");
+            }
+            libraryEventsService.handleRecovery((ConsumerRecord<Long, LibraryEvent>) consumerRecord, exception,
+                    isInvalidLibraryEvent(exception) ? 1 : BATCH_RETRIES + 1);
+        }, new FixedBackOff(1000L, BATCH_RETRIES));
+        batchErrorHandler.addNotRetryableExceptions(IllegalArgumentException.class);
+        factory.setBatchErrorHandler(batchErrorHandler);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "library-events.consumer.retry.mode", havingValue = "topics")
+    RetryTopicConfiguration libraryEventsRetryTopicConfiguration() {
+        final LibraryEventsConsumerProperties.Retry retry = consumerProperties.getRetry();
+        //retried records are republished as LibraryEvent, the ones that failed deserialization as their original bytes
+        final Serializer<LibraryEvent> libraryEventSerializer = new LibraryEventSerializer();
+        final Serializer<Object> valueSerializer = new Serializer<>() {
+            @Override
+            public byte[] serialize(String topic, Object value) {
+                return serialize(topic, null, value);
+            }
+
+            @Override
+            public byte[] serialize(String topic, Headers headers, Object value) {
+                return value instanceof byte[] bytes ? bytes : libraryEventSerializer.serialize(topic, headers, (LibraryEvent) value);
+            }
+        };
+        final KafkaTemplate<Long, Object> kafkaTemplate = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(
+                kafkaProperties.buildProducerProperties(), new LongSerializer(), valueSerializer));
+        return RetryTopicConfigurationBuilder.newInstance()
+                .includeTopic("library-events")
+                .maxAttempts(retry.getAttempts())
+                .exponentialBackoff(retry.getInitialDelay().toMillis(), retry.getMultiplier(), retry.getMaxDelay().toMillis())
+                //same classification as simpleRetryPolicy, anything else goes straight to the DLT
+                .retryOn(RecoverableDataAccessException.class)
+                .traversingCauses()
+                .autoCreateTopicsWith(retry.getPartitions(), retry.getReplicationFactor())
+                .dltSuffix("-dlt")
+                .create(kafkaTemplate);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "parallel")
+    KeyOrderedParallelProcessor keyOrderedParallelProcessor() {
+        return new KeyOrderedParallelProcessor(libraryEventsService, retryTemplate(), consumerProperties.getParallel());
+    }
+
+    //the processor retries and recovers on its worker lanes and commits offsets itself, so the container only polls
+    private void configureParallelListener(ConcurrentKafkaListenerContainerFactory<Object, Object> factory,
+                                           KeyOrderedParallelProcessor keyOrderedParallelProcessor) {
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setIdleEventInterval(consumerProperties.getParallel().getIdleCommitInterval().toMillis());
+    }
+
+    //the factory is typed <Object, Object> for the Boot configurer, the records of library-events are <Long, LibraryEvent>
+    @SuppressWarnings("unchecked")
+    private static RecordFilterStrategy<Object, Object> recordFilterStrategy(RecordFilterStrategy<Long, LibraryEvent> recordFilterStrategy) {
+        return consumerRecord -> recordFilterStrategy.filter((ConsumerRecord<Long, LibraryEvent>) (ConsumerRecord<?, ?>) consumerRecord);
+    }
+
+    //the log records the partition and offset a record was consumed from: a retried record comes from a retry topic
+    //and the parallel lanes, keyed by event id, log the events of a book out of offset order; either breaks the as-of lookups
+    private void checkEventLogOrdering() {
+        if(consumerProperties.getRetry().getMode() == LibraryEventsConsumerProperties.RetryMode.TOPICS) {
+            throw new IllegalStateException("The event-log persistence mode needs library-events.consumer.retry.mode=blocking, "
+                    + "retry topic deliveries would be logged with the offsets of the retry topics");
+        }
+        if(consumerProperties.getMode() == LibraryEventsConsumerProperties.Mode.PARALLEL && consumerProperties.getEventLog().isBookAffinityPartitioning()) {
+            throw new IllegalStateException("As-of-offset lookups need library-events.consumer.mode=record or batch, "
+                    + "the parallel lanes log the events of a book out of offset order");
+        }
+    }
+
+    private boolean isCooperative() {
+        return consumerProperties.getRebalance().getMode() == LibraryEventsConsumerProperties.RebalanceMode.COOPERATIVE;
+    }
+
+    //only partitions changing owner are revoked, and with a group.instance.id a restarted instance rejoins under the same
+    //identity, so a rolling restart within session-timeout moves nothing at all.
+    //Container overrides on top of Boot's consumer factory, which keeps its metrics listener and customizers;
+    //the container suffixes the group.instance.id of each concurrent consumer
+    private void configureCooperativeRebalance(ConcurrentKafkaListenerContainerFactory<Object, Object> factory) {
+        final LibraryEventsConsumerProperties.Rebalance rebalance = consumerProperties.getRebalance();
+        final Properties rebalanceConsumerProperties = factory.getContainerProperties().getKafkaConsumerProperties();
+        rebalanceConsumerProperties.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
+        if(StringUtils.hasText(rebalance.getGroupInstanceId())) {
+            rebalanceConsumerProperties.put(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, rebalance.getGroupInstanceId());
+            rebalanceConsumerProperties.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, (int) rebalance.getSessionTimeout().toMillis());
+        }
+    }
+
+    //the parallel processor drains and commits revoked partitions, in the cooperative mode it is wrapped by the warm-up listener
+    private ConsumerAwareRebalanceListener rebalanceListener(KeyOrderedParallelProcessor keyOrderedParallelProcessor) {
+        if(!isCooperative()) {
+            return keyOrderedParallelProcessor;
+        }
+        return new PartitionWarmUpListener(libraryEventsDeduplicator, queryService, consumerProperties.getRebalance(), keyOrderedParallelProcessor);
+    }
+
+    private static boolean isInvalidLibraryEvent(Throwable throwable) {
+        for(Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if(cause instanceof IllegalArgumentException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDeserializationFailure(Throwable throwable) {
+        for(Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if(cause instanceof DeserializationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private RetryTemplate retryTemplate() {
         FixedBackOffPolicy fixedBackOffPolicy = new FixedBackOffPolicy();
         fixedBackOffPolicy.setBackOffPeriod(1000);
@@ -79,6 +309,16 @@ public class LibraryEventConsumerConfig {
         RetryTemplate retryTemplate = new RetryTemplate();
         retryTemplate.setRetryPolicy(simpleRetryPolicy());
         retryTemplate.setBackOffPolicy(fixedBackOffPolicy);
+        //every failed attempt, the ones that end up recovered are counted again by handleRecovery
+        retryTemplate.registerListener(new RetryListenerSupport() {
+            @Override
+            public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+                final Object consumerRecord = context.getAttribute("record");
+                meterRegistry.counter("library.events.consumer.retries",
+                        "exception", NestedExceptionUtils.getMostSpecificCause(throwable).getClass().getSimpleName(),
+                        "partition", consumerRecord instanceof ConsumerRecord<?, ?> record ? String.valueOf(record.partition()) : "unknown").increment();
+            }
+        });
 
         return retryTemplate;
     }
@@ -0,0 +1,173 @@
+package andrei.libraryeventconsumer.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "library-events.consumer")
+public class LibraryEventsConsumerProperties {
+
+    //RECORD keeps one ConsumerRecord per listener call, BATCH hands the whole poll to the listener,
+    //PARALLEL fans each poll out to worker lanes by record key, without the idempotency filter: a redelivered record
+    //is applied again, harmless with the upsert persistence mode but appended twice to the event log
+    private Mode mode = Mode.RECORD;
+    //JPA goes through repository.save, UPSERT writes each LibraryEvent/Book pair with one MERGE/UPDATE statement each,
+    //EVENT_LOG appends every event to library_event_log and merges only the latest state of each book into book
+    private PersistenceMode persistenceMode = PersistenceMode.JPA;
+    //EXACTLY_ONCE (batch mode only) wraps each poll in one Kafka transaction, carrying the consumer offsets and any
+    //DLT records, around one JPA transaction, carrying the rows and the partition high-water marks
+    private Delivery delivery = Delivery.AT_LEAST_ONCE;
+    //must differ between instances of the consumer, a random suffix is used when it is not set
+    private String transactionIdPrefix;
+    private Batch batch = new Batch();
+    private Parallel parallel = new Parallel();
+    private Retry retry = new Retry();
+    private DeadLetter deadLetter = new DeadLetter();
+    private Idempotency idempotency = new Idempotency();
+    private Query query = new Query();
+    private Catalog catalog = new Catalog();
+    private Streams streams = new Streams();
+    private EventLog eventLog = new EventLog();
+    private Rebalance rebalance = new Rebalance();
+
+    public enum Mode {
+        RECORD,
+        BATCH,
+        PARALLEL
+    }
+
+    public enum PersistenceMode {
+        JPA,
+        UPSERT,
+        EVENT_LOG
+    }
+
+    public enum Delivery {
+        AT_LEAST_ONCE,
+        EXACTLY_ONCE
+    }
+
+    public enum RebalanceMode {
+        EAGER,
+        COOPERATIVE
+    }
+
+    public enum RetryMode {
+        BLOCKING,
+        TOPICS
+    }
+
+    public boolean isExactlyOnce() {
+        return delivery == Delivery.EXACTLY_ONCE;
+    }
+
+    @Data
+    public static class Batch {
+        //max records handed to the listener (and persisted) per poll
+        private int size = 500;
+        //max time the broker holds a fetch waiting for fetch-min-bytes, whichever limit is hit first wins
+        private Duration maxWait = Duration.ofMillis(500);
+        private int fetchMinBytes = 64 * 1024;
+    }
+
+    @Data
+    public static class Parallel {
+        private int workers = Runtime.getRuntime().availableProcessors();
+        //records polled but not finished yet, the partitions are paused when it is reached
+        private int maxInFlight = 1000;
+        //how long the poll thread waits for an in flight slot before pausing, well under max.poll.interval.ms
+        private Duration acquireTimeout = Duration.ofMillis(100);
+        //how long a revoked partition waits for its in flight records before committing
+        private Duration drainTimeout = Duration.ofSeconds(10);
+        private Duration idleCommitInterval = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Retry {
+        //BLOCKING retries on the listener thread with the RetryTemplate, TOPICS moves failed records to
+        //library-events-retry-<delay> topics right away (record mode only)
+        private RetryMode mode = RetryMode.BLOCKING;
+        //first delivery included, so 4 gives the retry-1000, retry-10000 and retry-60000 topics before the DLT
+        private int attempts = 4;
+        private Duration initialDelay = Duration.ofSeconds(1);
+        private double multiplier = 10;
+        private Duration maxDelay = Duration.ofSeconds(60);
+        private int partitions = 3;
+        private short replicationFactor = 3;
+    }
+
+    @Data
+    public static class DeadLetter {
+        //defaults for a redrive call that does not set its own limits
+        private int redriveRatePerSecond = 100;
+        private int redriveMaxRecords = 10000;
+    }
+
+    @Data
+    public static class Idempotency {
+        //record and batch modes only, the parallel mode completes offsets out of order so a high-water mark would drop
+        //records a slower lane has not applied yet
+        private boolean enabled = true;
+        //keys whose last applied payload is remembered, least recently used ones are evicted
+        private int cacheSize = 100_000;
+        //keeps the per partition high-water mark in the partition_high_water_mark table so it survives restarts
+        private boolean persistentHighWaterMark = false;
+    }
+
+    @Data
+    public static class Query {
+        //max entries per query cache, Caffeine evicts the least valuable ones past it
+        private int cacheSize = 10_000;
+        //upper bound on staleness for anything a write did not evict
+        private Duration cacheTtl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Catalog {
+        //in-memory current state of every book, rebuilt from the DB at startup
+        private boolean enabled = true;
+        //keeps the book names in direct memory, outside of the heap the GC has to scan
+        private boolean offHeap = false;
+        //books the arrays are sized for up front, they double past it
+        private int initialCapacity = 1024;
+    }
+
+    @Data
+    public static class Streams {
+        //Kafka Streams analytics topology over library-events, with its own application id and RocksDB state
+        private boolean enabled = false;
+        //tumbling window of the NEW/UPDATE rate counts, late records are accepted for one more window
+        private Duration rateWindow = Duration.ofMinutes(1);
+        //how far back the windowed counts can be queried
+        private Duration rateRetention = Duration.ofHours(1);
+        private int mostUpdatedLimit = 10;
+        //host:port of this instance, lets a query for a key hosted elsewhere be redirected there
+        private String applicationServer;
+    }
+
+    @Data
+    public static class EventLog {
+        //a book_snapshot row every that many events of a book, bounding the replay of an as-of lookup; 0 turns them off
+        private int snapshotInterval = 100;
+        //set when the producer's library-events.producer.partitioning is book-affinity, so all events of a book are on one
+        //partition; the as-of-offset lookups are rejected without it, and it needs the record or batch mode.
+        //The event-log mode itself needs blocking retries
+        private boolean bookAffinityPartitioning = false;
+    }
+
+    @Data
+    public static class Rebalance {
+        //EAGER revokes every partition of the group on each rebalance, COOPERATIVE uses the cooperative-sticky assignor
+        //and only moves the partitions that change owner, with their state warmed up and dropped by PartitionWarmUpListener
+        private RebalanceMode mode = RebalanceMode.EAGER;
+        //static membership (cooperative mode), must differ between instances; a restart within session-timeout gets its
+        //partitions back without any rebalance. The container suffixes it per child consumer, blank turns it off
+        private String groupInstanceId;
+        //how long a static member may be gone before its partitions move, an instance that never comes back costs that long
+        private Duration sessionTimeout = Duration.ofSeconds(45);
+        //books of a newly assigned partition preloaded into the query cache, 0 turns it off
+        private int warmUpBooks = 1000;
+    }
+}
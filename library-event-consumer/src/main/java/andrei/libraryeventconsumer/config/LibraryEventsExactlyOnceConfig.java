@@ -0,0 +1,39 @@
+package andrei.libraryeventconsumer.config;
+
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterPublisher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+
+@Configuration
+@ConditionalOnProperty(name = "library-events.consumer.delivery", havingValue = "exactly-once")
+public class LibraryEventsExactlyOnceConfig {
+
+    //Spring Boot backs off from its JPA transaction manager once any other one is declared, so it is declared here
+    //and kept primary for the TransactionTemplate and the repositories
+    @Bean
+    @Primary
+    JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                             ObjectProvider<TransactionManagerCustomizers> transactionManagerCustomizers) {
+        final JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+        transactionManagerCustomizers.ifAvailable(customizers -> customizers.customize(transactionManager));
+        return transactionManager;
+    }
+
+    //bound to the DLT publisher's producer factory, so the records it dead-letters join the listener transaction;
+    //with synchronization on, the deduplicator releases the dead-lettered offsets once the Kafka commit succeeded
+    @Bean
+    KafkaTransactionManager<Long, byte[]> kafkaTransactionManager(LibraryEventsDeadLetterPublisher deadLetterPublisher) {
+        final KafkaTransactionManager<Long, byte[]> transactionManager = new KafkaTransactionManager<>(deadLetterPublisher.getProducerFactory());
+        transactionManager.setTransactionSynchronization(AbstractPlatformTransactionManager.SYNCHRONIZATION_ON_ACTUAL_TRANSACTION);
+        return transactionManager;
+    }
+}
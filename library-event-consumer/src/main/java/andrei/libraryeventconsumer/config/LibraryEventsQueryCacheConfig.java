@@ -0,0 +1,35 @@
+package andrei.libraryeventconsumer.config;
+
+import andrei.libraryeventconsumer.service.LibraryEventsQueryService;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+@EnableCaching
+@RequiredArgsConstructor
+public class LibraryEventsQueryCacheConfig {
+
+    private final LibraryEventsConsumerProperties consumerProperties;
+
+    //fixed cache names, so nothing unbounded gets created on the fly and the caches are bound to the cache metrics at startup
+    @Bean
+    CacheManager cacheManager() {
+        final LibraryEventsConsumerProperties.Query query = consumerProperties.getQuery();
+        final CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(query.getCacheSize())
+                .expireAfterWrite(query.getCacheTtl())
+                .recordStats());
+        cacheManager.setCacheNames(List.of(LibraryEventsQueryService.BOOKS_CACHE,
+                LibraryEventsQueryService.LIBRARY_EVENTS_BY_BOOK_CACHE,
+                LibraryEventsQueryService.BOOKS_BY_AUTHOR_CACHE));
+        return cacheManager;
+    }
+}
@@ -0,0 +1,48 @@
+package andrei.libraryeventconsumer.config;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.streams.LibraryEventsAnalyticsTopology;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.errors.LogAndContinueExceptionHandler;
+import org.apache.kafka.streams.kstream.KStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaStreams;
+import org.springframework.kafka.annotation.KafkaStreamsDefaultConfiguration;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@EnableKafkaStreams
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.streams.enabled", havingValue = "true")
+public class LibraryEventsStreamsConfig {
+
+    private static final String DEFAULT_APPLICATION_ID = "library-events-analytics";
+
+    private final KafkaProperties kafkaProperties;
+    private final LibraryEventsConsumerProperties consumerProperties;
+
+    @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
+    KafkaStreamsConfiguration kafkaStreamsConfiguration() {
+        final Map<String, Object> streamsConfigs = new HashMap<>(kafkaProperties.buildStreamsProperties());
+        streamsConfigs.putIfAbsent(StreamsConfig.APPLICATION_ID_CONFIG, DEFAULT_APPLICATION_ID);
+        //a poison record is logged and skipped, the record listener already dead-letters it
+        streamsConfigs.putIfAbsent(StreamsConfig.DEFAULT_DESERIALIZATION_EXCEPTION_HANDLER_CLASS_CONFIG, LogAndContinueExceptionHandler.class);
+        if(consumerProperties.getStreams().getApplicationServer() != null) {
+            streamsConfigs.put(StreamsConfig.APPLICATION_SERVER_CONFIG, consumerProperties.getStreams().getApplicationServer());
+        }
+        return new KafkaStreamsConfiguration(streamsConfigs);
+    }
+
+    @Bean
+    KStream<Long, LibraryEvent> libraryEventsAnalytics(StreamsBuilder streamsBuilder) {
+        return LibraryEventsAnalyticsTopology.build(streamsBuilder, consumerProperties.getStreams());
+    }
+}
@@ -0,0 +1,209 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.service.LibraryEventsService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+//Fans the records of each partition out to a fixed set of single threaded lanes chosen by record key,
+//so records with the same key keep their order while different keys of the same partition run in parallel.
+@Slf4j
+public class KeyOrderedParallelProcessor implements ConsumerAwareRebalanceListener, DisposableBean {
+
+    private final LibraryEventsService libraryEventsService;
+    private final RetryTemplate retryTemplate;
+    private final LibraryEventsConsumerProperties.Parallel parallel;
+    private final ExecutorService[] lanes;
+    private final Semaphore inFlightPermits;
+    private final Map<TopicPartition, PartitionOffsetTracker> trackers = new ConcurrentHashMap<>();
+    //partitions paused by dispatch, per consumer since the child containers share the processor; each entry is only
+    //touched by the thread of its consumer
+    private final Map<Consumer<?, ?>, Set<TopicPartition>> pausedPartitions = new ConcurrentHashMap<>();
+
+    public KeyOrderedParallelProcessor(LibraryEventsService libraryEventsService, RetryTemplate retryTemplate,
+                                       LibraryEventsConsumerProperties.Parallel parallel) {
+        this.libraryEventsService = libraryEventsService;
+        this.retryTemplate = retryTemplate;
+        this.parallel = parallel;
+        this.inFlightPermits = new Semaphore(parallel.getMaxInFlight());
+        this.lanes = new ExecutorService[parallel.getWorkers()];
+        for(int lane = 0; lane < lanes.length; lane++) {
+            lanes[lane] = Executors.newSingleThreadExecutor();
+        }
+    }
+
+    //must run on the consumer thread, it pauses the partitions of the consumer when the lanes fall behind
+    public void dispatch(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords, Consumer<?, ?> consumer) throws InterruptedException {
+        for(int index = 0; index < consumerRecords.size(); index++) {
+            final ConsumerRecord<Long, LibraryEvent> consumerRecord = consumerRecords.get(index);
+            //once max-in-flight records are queued the poll thread only waits briefly, blocked for long it would
+            //overrun max.poll.interval.ms and be kicked out of the group
+            if(!inFlightPermits.tryAcquire(parallel.getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                pause(consumer, consumerRecords.subList(index, consumerRecords.size()));
+                return;
+            }
+            final PartitionOffsetTracker tracker = trackers.computeIfAbsent(
+                    new TopicPartition(consumerRecord.topic(), consumerRecord.partition()), topicPartition -> new PartitionOffsetTracker());
+            tracker.dispatched(consumerRecord.offset());
+            lanes[Math.floorMod(routingKey(consumerRecord), lanes.length)].execute(() -> process(consumerRecord, tracker));
+        }
+    }
+
+    //must run on the consumer thread, it commits up to the highest contiguous completed offset of each assigned partition
+    public void commit(Consumer<?, ?> consumer) {
+        final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        consumer.assignment().forEach(topicPartition -> {
+            final PartitionOffsetTracker tracker = trackers.get(topicPartition);
+            if(tracker != null) {
+                final long offset = tracker.nextCommit();
+                if(offset >= 0) {
+                    offsets.put(topicPartition, new OffsetAndMetadata(offset));
+                }
+            }
+        });
+        if(!offsets.isEmpty()) {
+            consumer.commitAsync(offsets, (committedOffsets, exception) -> {
+                if(exception != null) {
+                    log.error("Error committing offsets {} and the exception is {}", committedOffsets, exception.getMessage());
+                }
+            });
+        }
+    }
+
+    @EventListener
+    public void onIdle(ListenerContainerIdleEvent event) {
+        //the idle event is published on the consumer thread, so the tail of a burst still gets committed
+        commit(event.getConsumer());
+        resumeIfCaughtUp(event.getConsumer());
+    }
+
+    //the records not dispatched are fetched again from their offsets once the partitions are resumed
+    private void pause(Consumer<?, ?> consumer, List<ConsumerRecord<Long, LibraryEvent>> undispatchedRecords) {
+        final Map<TopicPartition, Long> seekOffsets = new LinkedHashMap<>();
+        undispatchedRecords.forEach(consumerRecord ->
+                seekOffsets.putIfAbsent(new TopicPartition(consumerRecord.topic(), consumerRecord.partition()), consumerRecord.offset()));
+        seekOffsets.forEach(consumer::seek);
+        //partitions paused by someone else are left to them
+        final Set<TopicPartition> partitions = new HashSet<>(consumer.assignment());
+        partitions.removeAll(consumer.paused());
+        consumer.pause(partitions);
+        pausedPartitions.computeIfAbsent(consumer, key -> new HashSet<>()).addAll(partitions);
+        log.info("Paused partitions {} with {} records in flight", partitions, parallel.getMaxInFlight() - inFlightPermits.availablePermits());
+    }
+
+    //resumed at half of max-in-flight, so the lanes have a backlog again before the next pause
+    private void resumeIfCaughtUp(Consumer<?, ?> consumer) {
+        final Set<TopicPartition> partitions = pausedPartitions.get(consumer);
+        if(partitions == null || inFlightPermits.availablePermits() < parallel.getMaxInFlight() / 2) {
+            return;
+        }
+        pausedPartitions.remove(consumer);
+        //a rebalance may have revoked them or dropped their paused state meanwhile
+        partitions.retainAll(consumer.paused());
+        consumer.resume(partitions);
+        log.info("Resumed partitions {}", partitions);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        final Set<TopicPartition> paused = pausedPartitions.get(consumer);
+        if(paused != null) {
+            paused.removeAll(partitions);
+        }
+        final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for(TopicPartition topicPartition : partitions) {
+            final PartitionOffsetTracker tracker = trackers.remove(topicPartition);
+            if(tracker == null) {
+                continue;
+            }
+            try {
+                if(!tracker.awaitDrained(parallel.getDrainTimeout().toMillis())) {
+                    log.warn("Partition {} revoked with {} records still in flight", topicPartition, tracker.inFlight());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final long offset = tracker.committableOffset();
+            if(offset >= 0) {
+                offsets.put(topicPartition, new OffsetAndMetadata(offset));
+            }
+        }
+        if(!offsets.isEmpty()) {
+            consumer.commitSync(offsets);
+        }
+    }
+
+    //the containers are stopped by then, the records already queued on the lanes are given drain-timeout to finish
+    @Override
+    public void destroy() throws InterruptedException {
+        for(ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        final long deadline = System.nanoTime() + parallel.getDrainTimeout().toNanos();
+        for(ExecutorService lane : lanes) {
+            if(!lane.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                log.warn("Lane still busy after {}, interrupting it", parallel.getDrainTimeout());
+                lane.shutdownNow();
+            }
+        }
+    }
+
+    private void process(ConsumerRecord<Long, LibraryEvent> consumerRecord, PartitionOffsetTracker tracker) {
+        try {
+            retryTemplate.execute(retryContext -> {
+                //same attribute the container sets, so the retry metrics can tag the partition
+                retryContext.setAttribute("record", consumerRecord);
+                libraryEventsService.processLibraryEvent(consumerRecord);
+                return null;
+            }, retryContext -> {
+                if(LibraryEventsService.isRecoverable(retryContext.getLastThrowable())) {
+                    log.info("Inside the recoverable logic");
+                } else {
+                    log.info("Inside the non recoverable logic");
+                }
+                libraryEventsService.handleRecovery(consumerRecord, retryContext.getLastThrowable(), retryContext.getRetryCount());
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Error processing record {} and the exception is {}", consumerRecord, e.getMessage());
+        } finally {
+            tracker.completed(consumerRecord.offset());
+            inFlightPermits.release();
+        }
+    }
+
+    //the record key (libraryEventId) when present, otherwise the bookId, for NEW events from producers that send no key
+    private int routingKey(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        if(consumerRecord.key() != null) {
+            return Long.hashCode(consumerRecord.key());
+        }
+        final LibraryEvent libraryEvent = consumerRecord.value();
+        if(libraryEvent == null || libraryEvent.getBook() == null) {
+            return 0;
+        }
+        return Objects.hashCode(libraryEvent.getBook().getBookId());
+    }
+}
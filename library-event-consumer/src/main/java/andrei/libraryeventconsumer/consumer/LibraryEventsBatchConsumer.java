@@ -0,0 +1,27 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.service.LibraryEventsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "batch")
+public class LibraryEventsBatchConsumer {
+
+    private final LibraryEventsService libraryEventsService;
+
+    @KafkaListener(topics = {"library-events"})
+    public void onMessage(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        log.info("Consumer Records batch size: {} ", consumerRecords.size());
+        libraryEventsService.processLibraryEvents(consumerRecords);
+    }
+}
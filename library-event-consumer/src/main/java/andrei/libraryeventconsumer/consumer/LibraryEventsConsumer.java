@@ -1,23 +1,28 @@
 package andrei.libraryeventconsumer.consumer;
 
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.logging.SampledLogFilter;
 import andrei.libraryeventconsumer.service.LibraryEventsService;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "record", matchIfMissing = true)
 public class LibraryEventsConsumer {
 
     private final LibraryEventsService libraryEventsService;
 
     @KafkaListener(topics = {"library-events"})
-    public void onMessage(ConsumerRecord<Integer, String> consumerRecord) throws JsonProcessingException {
-        log.info("Consumer Record: {} ", consumerRecord);
+    public void onMessage(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        log.info(SampledLogFilter.SAMPLED, "event=record.received topic={} partition={} offset={} key={}",
+                consumerRecord.topic(), consumerRecord.partition(), consumerRecord.offset(), consumerRecord.key());
+        log.debug("Consumer Record: {} ", consumerRecord);
         libraryEventsService.processLibraryEvent(consumerRecord);
     }
 }
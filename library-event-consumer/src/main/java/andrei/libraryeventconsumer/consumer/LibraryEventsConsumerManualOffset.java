@@ -1,5 +1,7 @@
 package andrei.libraryeventconsumer.consumer;
 
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.logging.SampledLogFilter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -9,12 +11,14 @@ import org.springframework.stereotype.Component;
 
 @Slf4j
 //@Component
-public class LibraryEventsConsumerManualOffset implements AcknowledgingMessageListener<Integer, String> {
+public class LibraryEventsConsumerManualOffset implements AcknowledgingMessageListener<Long, LibraryEvent> {
 
     @Override
     @KafkaListener(topics = {"library-events"})
-    public void onMessage(ConsumerRecord<Integer, String> consumerRecord, Acknowledgment acknowledgment) {
-        log.info("Consumer Record: {} ", consumerRecord);
+    public void onMessage(ConsumerRecord<Long, LibraryEvent> consumerRecord, Acknowledgment acknowledgment) {
+        log.info(SampledLogFilter.SAMPLED, "event=record.received topic={} partition={} offset={} key={}",
+                consumerRecord.topic(), consumerRecord.partition(), consumerRecord.offset(), consumerRecord.key());
+        log.debug("Consumer Record: {} ", consumerRecord);
         acknowledgment.acknowledge();
     }
 }
@@ -0,0 +1,28 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "library-events.consumer.mode", havingValue = "parallel")
+public class LibraryEventsParallelConsumer {
+
+    private final KeyOrderedParallelProcessor keyOrderedParallelProcessor;
+
+    @KafkaListener(topics = {"library-events"})
+    public void onMessage(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords, Consumer<?, ?> consumer) throws InterruptedException {
+        log.info("Consumer Records batch size: {} ", consumerRecords.size());
+        keyOrderedParallelProcessor.dispatch(consumerRecords, consumer);
+        keyOrderedParallelProcessor.commit(consumer);
+    }
+}
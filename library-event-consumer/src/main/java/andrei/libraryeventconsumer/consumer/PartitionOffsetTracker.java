@@ -0,0 +1,52 @@
+package andrei.libraryeventconsumer.consumer;
+
+import java.util.TreeSet;
+
+//Tracks the offsets of one partition that were handed to workers but are not done yet.
+//The committable offset is the lowest one still in flight, so nothing past a gap is ever committed.
+public class PartitionOffsetTracker {
+
+    private final TreeSet<Long> inFlightOffsets = new TreeSet<>();
+    private long nextOffset = -1;
+    private long committedOffset = -1;
+
+    public synchronized void dispatched(long offset) {
+        inFlightOffsets.add(offset);
+        nextOffset = Math.max(nextOffset, offset + 1);
+    }
+
+    public synchronized void completed(long offset) {
+        inFlightOffsets.remove(offset);
+        notifyAll();
+    }
+
+    public synchronized long committableOffset() {
+        return inFlightOffsets.isEmpty() ? nextOffset : inFlightOffsets.first();
+    }
+
+    //returns the offset to commit, or -1 when nothing new completed since the last commit
+    public synchronized long nextCommit() {
+        final long committable = committableOffset();
+        if(committable <= committedOffset) {
+            return -1;
+        }
+        committedOffset = committable;
+        return committable;
+    }
+
+    public synchronized boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(!inFlightOffsets.isEmpty()) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if(remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    public synchronized int inFlight() {
+        return inFlightOffsets.size();
+    }
+}
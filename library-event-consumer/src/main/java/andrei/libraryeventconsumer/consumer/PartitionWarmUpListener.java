@@ -0,0 +1,101 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.service.LibraryEventsDeduplicator;
+import andrei.libraryeventconsumer.service.LibraryEventsQueryService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+//Rebalance listener of the cooperative mode. The callbacks only see the partitions that actually move, so the
+//partition-scoped state is loaded for newly assigned partitions before their first records are handed to the listener,
+//and dropped for revoked ones, while the partitions this consumer keeps are processed without a pause.
+@Slf4j
+@RequiredArgsConstructor
+public class PartitionWarmUpListener implements ConsumerAwareRebalanceListener {
+
+    private static final String TOPIC_NAME = "library-events";
+
+    private final LibraryEventsDeduplicator libraryEventsDeduplicator;
+    private final LibraryEventsQueryService queryService;
+    private final LibraryEventsConsumerProperties.Rebalance rebalance;
+    //the parallel processor in the parallel mode, it still drains and commits revoked partitions; null otherwise
+    private final ConsumerAwareRebalanceListener delegate;
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if(delegate != null) {
+            delegate.onPartitionsAssigned(consumer, partitions);
+        }
+        //a cooperative rebalance calls back with no partitions on every consumer that gains nothing
+        if(partitions.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        libraryEventsDeduplicator.warmUp(partitions);
+        final int books = rebalance.getWarmUpBooks() > 0
+                ? queryService.warmUpBooks(bookFilter(consumer, partitions), rebalance.getWarmUpBooks())
+                : 0;
+        log.info("Warmed up partitions {} with {} books in {} ms", partitions, books, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if(delegate != null) {
+            delegate.onPartitionsRevokedBeforeCommit(consumer, partitions);
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if(delegate != null) {
+            delegate.onPartitionsRevokedAfterCommit(consumer, partitions);
+        }
+        drop(consumer, partitions);
+    }
+
+    //another member already owns them, nothing may be committed for them any more
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if(delegate != null) {
+            delegate.onPartitionsLost(consumer, partitions);
+        }
+        drop(consumer, partitions);
+    }
+
+    private void drop(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if(partitions.isEmpty()) {
+            return;
+        }
+        libraryEventsDeduplicator.forget(partitions);
+        queryService.evictBooks(bookFilter(consumer, partitions));
+        log.info("Dropped the state of partitions {}", partitions);
+    }
+
+    private static IntPredicate bookFilter(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        final Set<Integer> bookPartitions = partitions.stream()
+                .filter(topicPartition -> TOPIC_NAME.equals(topicPartition.topic()))
+                .map(TopicPartition::partition)
+                .collect(Collectors.toSet());
+        if(bookPartitions.isEmpty()) {
+            return bookId -> false;
+        }
+        final int partitionCount = consumer.partitionsFor(TOPIC_NAME).size();
+        return bookId -> bookPartitions.contains(partitionOf(bookId, partitionCount));
+    }
+
+    //same partition the producer's book-affinity partitioning picks, the murmur2 of the bookId as a 4 byte int
+    static int partitionOf(int bookId, int partitionCount) {
+        return Utils.toPositive(Utils.murmur2(new IntegerSerializer().serialize(TOPIC_NAME, bookId))) % partitionCount;
+    }
+}
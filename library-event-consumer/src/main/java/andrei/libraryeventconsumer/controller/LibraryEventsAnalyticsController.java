@@ -0,0 +1,81 @@
+package andrei.libraryeventconsumer.controller;
+
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.streams.LibraryEventsAnalyticsService;
+import andrei.libraryeventconsumer.streams.LibraryEventsAnalyticsTopology;
+import andrei.libraryeventconsumer.streams.MostUpdatedBooks;
+import andrei.libraryeventconsumer.streams.WindowedCount;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.HostInfo;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@ConditionalOnProperty(name = "library-events.consumer.streams.enabled", havingValue = "true")
+public class LibraryEventsAnalyticsController {
+
+    private final LibraryEventsAnalyticsService analyticsService;
+
+    @GetMapping("/v1/analytics/authors/{bookAuthor}/books")
+    public ResponseEntity<Map<String, Object>> getBooksPerAuthor(@PathVariable String bookAuthor) {
+        return query(LibraryEventsAnalyticsTopology.BOOKS_PER_AUTHOR_STORE, bookAuthor,
+                () -> Map.of("bookAuthor", bookAuthor, "books", analyticsService.booksPerAuthor(bookAuthor)));
+    }
+
+    @GetMapping("/v1/analytics/event-types/{libraryEventType}/count")
+    public ResponseEntity<Map<String, Object>> getEventTypeCount(@PathVariable LibraryEventType libraryEventType) {
+        return query(LibraryEventsAnalyticsTopology.EVENT_TYPE_TOTAL_COUNTS_STORE, libraryEventType.name(),
+                () -> Map.of("libraryEventType", libraryEventType, "count", analyticsService.totalCount(libraryEventType)));
+    }
+
+    @GetMapping("/v1/analytics/event-types/{libraryEventType}/rate")
+    public ResponseEntity<List<WindowedCount>> getEventTypeRate(@PathVariable LibraryEventType libraryEventType,
+                                                                @RequestParam(defaultValue = "PT15M") Duration lookback) {
+        return query(LibraryEventsAnalyticsTopology.EVENT_TYPE_WINDOWED_COUNTS_STORE, libraryEventType.name(),
+                () -> analyticsService.windowedCounts(libraryEventType, lookback));
+    }
+
+    @GetMapping("/v1/analytics/books/most-updated")
+    public ResponseEntity<MostUpdatedBooks> getMostUpdatedBooks() {
+        return query(LibraryEventsAnalyticsTopology.MOST_UPDATED_BOOKS_STORE, LibraryEventsAnalyticsTopology.MOST_UPDATED_BOOKS_KEY,
+                analyticsService::mostUpdatedBooks);
+    }
+
+    //stores are unavailable while the topology starts or rebalances, the caller should retry
+    @ExceptionHandler(InvalidStateStoreException.class)
+    public ResponseEntity<String> handleInvalidStateStore(InvalidStateStoreException ex) {
+        log.warn("Analytics query while the state stores are not queryable: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ex.getMessage());
+    }
+
+    private <T> ResponseEntity<T> query(String storeName, String key, Supplier<T> localQuery) {
+        final Optional<HostInfo> remoteHost = analyticsService.remoteHost(storeName, key);
+        if(remoteHost.isPresent()) {
+            return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT)
+                    .location(ServletUriComponentsBuilder.fromCurrentRequest()
+                            .host(remoteHost.get().host())
+                            .port(remoteHost.get().port())
+                            .build()
+                            .toUri())
+                    .build();
+        }
+        return ResponseEntity.ok(localQuery.get());
+    }
+}
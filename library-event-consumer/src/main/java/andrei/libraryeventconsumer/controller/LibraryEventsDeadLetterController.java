@@ -0,0 +1,38 @@
+package andrei.libraryeventconsumer.controller;
+
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterRedriver;
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterRedriver.RedriveJob;
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterRedriver.RedriveRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.net.URI;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class LibraryEventsDeadLetterController {
+
+    private final LibraryEventsDeadLetterRedriver deadLetterRedriver;
+
+    //a rate-limited redrive can take minutes, the request only queues it and points at the job
+    @PostMapping("/v1/library-events-dlt/redrive")
+    public ResponseEntity<RedriveJob> redrive(@RequestBody RedriveRequest request) {
+        log.info("Redrive requested {}", request);
+        final RedriveJob job = deadLetterRedriver.submit(request);
+        return ResponseEntity.accepted()
+                .location(URI.create("/v1/library-events-dlt/redrive/" + job.getId()))
+                .body(job);
+    }
+
+    @GetMapping("/v1/library-events-dlt/redrive/{id}")
+    public ResponseEntity<RedriveJob> getRedrive(@PathVariable String id) {
+        return ResponseEntity.of(deadLetterRedriver.findJob(id));
+    }
+}
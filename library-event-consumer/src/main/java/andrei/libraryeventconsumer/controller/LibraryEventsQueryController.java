@@ -0,0 +1,53 @@
+package andrei.libraryeventconsumer.controller;
+
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.BookSnapshot;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.service.BookHistoryService;
+import andrei.libraryeventconsumer.service.LibraryEventsQueryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+
+@RestController
+@RequiredArgsConstructor
+public class LibraryEventsQueryController {
+
+    private final LibraryEventsQueryService queryService;
+    private final BookHistoryService bookHistoryService;
+
+    @GetMapping("/v1/books/{bookId}")
+    public ResponseEntity<Book> getBook(@PathVariable Integer bookId) {
+        return ResponseEntity.of(queryService.findBook(bookId));
+    }
+
+    @GetMapping("/v1/books/{bookId}/library-events")
+    public ResponseEntity<Page<LibraryEvent>> getLibraryEventsByBook(@PathVariable Integer bookId, @PageableDefault Pageable pageable) {
+        return ResponseEntity.ok(queryService.findLibraryEventsByBook(bookId, pageable));
+    }
+
+    @GetMapping("/v1/books")
+    public ResponseEntity<Page<Book>> getBooksByAuthor(@RequestParam String author, @PageableDefault Pageable pageable) {
+        return ResponseEntity.ok(queryService.findBooksByAuthor(author, pageable));
+    }
+
+    //event-log persistence mode only, e.g. /v1/books/456/as-of?offset=1200 or ?timestamp=2021-09-01T10:15:30Z;
+    //409 for an offset without the book-affinity partitioning, the timestamp lookup still works
+    @GetMapping(value = "/v1/books/{bookId}/as-of", params = "offset")
+    public ResponseEntity<BookSnapshot> getBookAsOfOffset(@PathVariable Integer bookId, @RequestParam long offset) {
+        return ResponseEntity.of(bookHistoryService.findBookAsOfOffset(bookId, offset));
+    }
+
+    @GetMapping(value = "/v1/books/{bookId}/as-of", params = "timestamp")
+    public ResponseEntity<BookSnapshot> getBookAsOfTimestamp(@PathVariable Integer bookId, @RequestParam Instant timestamp) {
+        return ResponseEntity.of(bookHistoryService.findBookAsOfTimestamp(bookId, timestamp));
+    }
+}
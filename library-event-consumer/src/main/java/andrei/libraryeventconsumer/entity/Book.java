@@ -1,5 +1,6 @@
 package andrei.libraryeventconsumer.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -12,12 +13,15 @@ import javax.persistence.*;
 @Data
 @Builder
 @Entity
+@Table(indexes = @Index(name = "idx_book_author", columnList = "bookAuthor"))
 public class Book {
 
     @Id
     private Integer bookId;
     private String bookName;
     private String bookAuthor;
+    //back reference only, it is not part of the wire format and would recurse when a LibraryEvent is serialized
+    @JsonIgnore
     @OneToOne
     @JoinColumn(name = "libraryEventId")
     private LibraryEvent libraryEvent;
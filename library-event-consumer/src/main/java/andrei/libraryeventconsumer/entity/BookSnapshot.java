@@ -0,0 +1,37 @@
+package andrei.libraryeventconsumer.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+//State of a book folded from its library_event_log rows up to bookVersion, written every snapshot-interval events
+//so a historical read replays at most that many rows. As-of lookups return the same shape, unsaved.
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_book_snapshot_book_version", columnNames = {"bookId", "bookVersion"}))
+public class BookSnapshot {
+
+    @JsonIgnore
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book-snapshot-id")
+    @SequenceGenerator(name = "book-snapshot-id", sequenceName = "book_snapshot_seq", allocationSize = 50)
+    private Long snapshotId;
+    private Integer bookId;
+    private Long bookVersion;
+    private String bookName;
+    private String bookAuthor;
+    //the event that produced this state
+    private Long libraryEventId;
+    private Long updateCount;
+    private Integer recordPartition;
+    private Long recordOffset;
+    private Instant recordTimestamp;
+}
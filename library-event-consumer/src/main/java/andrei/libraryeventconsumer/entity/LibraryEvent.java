@@ -1,6 +1,10 @@
 package andrei.libraryeventconsumer.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.springframework.data.domain.Persistable;
 
 import javax.persistence.*;
 
@@ -9,15 +13,43 @@ import javax.persistence.*;
 @Data
 @Builder
 @Entity
-public class LibraryEvent {
+public class LibraryEvent implements Persistable<Long> {
 
+    //assigned by the producer, the sequence is only the fallback for events sent without one
     @Id
-    @GeneratedValue
-    private Integer libraryEventId;
+    @GeneratedValue(generator = "library-event-id")
+    @GenericGenerator(name = "library-event-id", strategy = "andrei.libraryeventconsumer.entity.ProducerAssignedIdGenerator",
+            parameters = @Parameter(name = "sequence_name", value = "hibernate_sequence"))
+    private Long libraryEventId;
     @Enumerated(EnumType.STRING)
     private LibraryEventType libraryEventType;
 
     @OneToOne(mappedBy = "libraryEvent", cascade = CascadeType.ALL)
     @ToString.Exclude
     private Book book;
+
+    //set once the row is known to exist, a NEW event with its id already assigned is otherwise persisted without the merge SELECT
+    @Transient
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private boolean persisted;
+
+    @Override
+    @JsonIgnore
+    public Long getId() {
+        return libraryEventId;
+    }
+
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return !persisted && libraryEventType != LibraryEventType.UPDATE;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        this.persisted = true;
+    }
 }
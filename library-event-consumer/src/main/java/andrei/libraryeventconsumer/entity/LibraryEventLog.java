@@ -0,0 +1,38 @@
+package andrei.libraryeventconsumer.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+//One row per applied event, never updated. The pooled sequence hands out 50 ids per round trip,
+//so Hibernate can group the inserts of a batch into JDBC batches (an identity column would disable that).
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_library_event_log_book_version", columnNames = {"bookId", "bookVersion"}),
+        indexes = @Index(name = "idx_library_event_log_event", columnList = "libraryEventId"))
+public class LibraryEventLog {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "library-event-log-id")
+    @SequenceGenerator(name = "library-event-log-id", sequenceName = "library_event_log_seq", allocationSize = 50)
+    private Long logId;
+    private Long libraryEventId;
+    @Enumerated(EnumType.STRING)
+    private LibraryEventType libraryEventType;
+    private Integer bookId;
+    //1 for the first event of the book, then +1 per event; two writers racing on a book fail on the unique constraint
+    private Long bookVersion;
+    private String bookName;
+    private String bookAuthor;
+    //where the event was read from, a book's events share a partition with the producer's book-affinity partitioning
+    private Integer recordPartition;
+    private Long recordOffset;
+    private Instant recordTimestamp;
+}
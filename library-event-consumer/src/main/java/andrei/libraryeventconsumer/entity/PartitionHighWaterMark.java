@@ -0,0 +1,23 @@
+package andrei.libraryeventconsumer.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@Entity
+public class PartitionHighWaterMark {
+
+    //topic-partition, e.g. library-events-0
+    @Id
+    private String topicPartition;
+    //highest offset already applied to the database for the partition
+    private Long appliedOffset;
+}
@@ -0,0 +1,25 @@
+package andrei.libraryeventconsumer.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+//A record dead-lettered under exactly-once delivery, committed with the high-water mark that covers it but whose DLT
+//send only counts once the Kafka transaction commits; until then a redelivery of it is not dropped as a duplicate
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@Entity
+public class PendingDeadLetter {
+
+    //topic-partition@offset, e.g. library-events-0@42
+    @Id
+    private String recordId;
+    private String topicPartition;
+    private Long recordOffset;
+}
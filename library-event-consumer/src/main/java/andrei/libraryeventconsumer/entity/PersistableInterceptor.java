@@ -0,0 +1,14 @@
+package andrei.libraryeventconsumer.entity;
+
+import org.hibernate.EmptyInterceptor;
+import org.springframework.data.domain.Persistable;
+
+//Hibernate treats an entity with a generated id that is already set as detached and refuses to persist it.
+//A Persistable decides for itself, so a NEW event carrying its producer assigned id is inserted, not merged.
+public class PersistableInterceptor extends EmptyInterceptor {
+
+    @Override
+    public Boolean isTransient(Object entity) {
+        return entity instanceof Persistable<?> persistable ? persistable.isNew() : null;
+    }
+}
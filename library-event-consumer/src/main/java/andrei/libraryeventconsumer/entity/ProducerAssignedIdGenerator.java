@@ -0,0 +1,17 @@
+package andrei.libraryeventconsumer.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import java.io.Serializable;
+
+//Keeps the libraryEventId the producer assigned, so inserting a NEW event costs no sequence round trip.
+//Only events from producers that predate the generated ids reach the sequence, which is still hibernate_sequence.
+public class ProducerAssignedIdGenerator extends SequenceStyleGenerator {
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        final Serializable assignedId = session.getEntityPersister(null, object).getIdentifier(object, session);
+        return assignedId != null ? assignedId : super.generate(session, object);
+    }
+}
@@ -0,0 +1,25 @@
+package andrei.libraryeventconsumer.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+//A DLT record already sent back to library-events past the committed redrive offset, by a filtered redrive or one
+//that stopped at a failed send; the next redrive skips it instead of sending it again
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+@Entity
+public class RedrivenDeadLetter {
+
+    //topic-partition@offset, e.g. library-events-dlt-0@42
+    @Id
+    private String recordId;
+    private String topicPartition;
+    private Long recordOffset;
+}
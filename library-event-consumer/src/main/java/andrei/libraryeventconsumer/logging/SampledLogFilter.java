@@ -0,0 +1,70 @@
+package andrei.libraryeventconsumer.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Lets through 1 in N of the log lines marked SAMPLED, per logger, before any message formatting happens.
+//Lines without the marker and anything at WARN or above are never sampled, so every failure is still logged.
+public class SampledLogFilter extends TurboFilter {
+
+    public static final Marker SAMPLED = MarkerFactory.getMarker("SAMPLED");
+
+    private int sampleRate = 1;
+    private final Map<String, Integer> categoryRates = new ConcurrentHashMap<>();
+    private final Map<String, Sampler> samplers = new ConcurrentHashMap<>();
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        //format is null for the isXxxEnabled checks, those must not consume a sample
+        if(format == null || marker == null || !marker.contains(SAMPLED) || level.isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        return samplers.computeIfAbsent(logger.getName(), this::sampler).sample() ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    //logger name or package prefix and its rate, e.g. andrei.libraryeventconsumer.service=1000; the longest prefix wins
+    public void addCategory(String category) {
+        final int separator = category.lastIndexOf('=');
+        if(separator < 1) {
+            addError("Sampling category must look like logger.name=rate but was " + category);
+            return;
+        }
+        categoryRates.put(category.substring(0, separator).trim(), Integer.parseInt(category.substring(separator + 1).trim()));
+    }
+
+    private Sampler sampler(String loggerName) {
+        String matched = null;
+        for(String category : categoryRates.keySet()) {
+            if((loggerName.equals(category) || loggerName.startsWith(category + "."))
+                    && (matched == null || category.length() > matched.length())) {
+                matched = category;
+            }
+        }
+        return new Sampler(Math.max(1, matched != null ? categoryRates.get(matched) : sampleRate));
+    }
+
+    private static class Sampler {
+        private final int rate;
+        private final AtomicLong count = new AtomicLong();
+
+        Sampler(int rate) {
+            this.rate = rate;
+        }
+
+        boolean sample() {
+            return rate == 1 || count.getAndIncrement() % rate == 0;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package andrei.libraryeventconsumer.repository;
+
+import andrei.libraryeventconsumer.entity.Book;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.QueryHint;
+import java.util.stream.Stream;
+
+public interface BookRepository extends JpaRepository<Book, Integer> {
+
+    //served by the idx_book_author index
+    Page<Book> findByBookAuthor(String bookAuthor, Pageable pageable);
+
+    //current state written by the event-log persistence mode, the history stays in library_event_log
+    @Modifying
+    @Query(value = "MERGE INTO book (book_id, book_name, book_author) KEY (book_id) " +
+            "VALUES (:bookId, :bookName, :bookAuthor)", nativeQuery = true)
+    int upsertBookState(@Param("bookId") Integer bookId, @Param("bookName") String bookName, @Param("bookAuthor") String bookAuthor);
+
+    //id, name and author only, streamed so the whole table is never held by the persistence context
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<BookView> streamAllBy();
+
+    interface BookView {
+        Integer getBookId();
+        String getBookName();
+        String getBookAuthor();
+    }
+}
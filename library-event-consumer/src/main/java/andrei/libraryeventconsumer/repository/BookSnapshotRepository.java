@@ -0,0 +1,19 @@
+package andrei.libraryeventconsumer.repository;
+
+import andrei.libraryeventconsumer.entity.BookSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+//all served by the uk_book_snapshot_book_version index, a book has one snapshot per snapshot-interval events
+public interface BookSnapshotRepository extends JpaRepository<BookSnapshot, Long> {
+
+    Optional<BookSnapshot> findFirstByBookIdAndBookVersionLessThanOrderByBookVersionDesc(Integer bookId, Long bookVersion);
+
+    Optional<BookSnapshot> findFirstByBookIdAndBookVersionGreaterThanOrderByBookVersion(Integer bookId, Long bookVersion);
+
+    Optional<BookSnapshot> findFirstByBookIdAndRecordOffsetLessThanEqualOrderByBookVersionDesc(Integer bookId, Long recordOffset);
+
+    Optional<BookSnapshot> findFirstByBookIdAndRecordTimestampLessThanEqualOrderByBookVersionDesc(Integer bookId, Instant recordTimestamp);
+}
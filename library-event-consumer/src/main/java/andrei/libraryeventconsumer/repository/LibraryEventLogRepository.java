@@ -0,0 +1,31 @@
+package andrei.libraryeventconsumer.repository;
+
+import andrei.libraryeventconsumer.entity.LibraryEventLog;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface LibraryEventLogRepository extends JpaRepository<LibraryEventLog, Long> {
+
+    //served by the idx_library_event_log_event index, an UPDATE is valid once its NEW event is logged
+    @Query("SELECT DISTINCT l.libraryEventId FROM LibraryEventLog l WHERE l.libraryEventId IN :libraryEventIds")
+    Set<Long> findLoggedLibraryEventIds(@Param("libraryEventIds") Collection<Long> libraryEventIds);
+
+    //the rest are served by the uk_library_event_log_book_version index
+    @Query("SELECT l.bookId AS bookId, MAX(l.bookVersion) AS bookVersion FROM LibraryEventLog l " +
+            "WHERE l.bookId IN :bookIds GROUP BY l.bookId")
+    List<BookVersion> findBookVersions(@Param("bookIds") Collection<Integer> bookIds);
+
+    List<LibraryEventLog> findByBookIdOrderByBookVersion(Integer bookId);
+
+    List<LibraryEventLog> findByBookIdAndBookVersionBetweenOrderByBookVersion(Integer bookId, Long fromBookVersion, Long toBookVersion);
+
+    interface BookVersion {
+        Integer getBookId();
+        Long getBookVersion();
+    }
+}
@@ -1,8 +1,35 @@
 package andrei.libraryeventconsumer.repository;
 
 import andrei.libraryeventconsumer.entity.LibraryEvent;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-public interface LibraryEventsRepository extends JpaRepository<LibraryEvent, Integer> {
+public interface LibraryEventsRepository extends JpaRepository<LibraryEvent, Long> {
 
+    //book primary key lookup joined on the book.library_event_id foreign key index
+    Page<LibraryEvent> findByBookBookId(Integer bookId, Pageable pageable);
+
+    //native H2 statements used by the upsert persistence mode, one round trip each and no merge SELECT;
+    //nextLibraryEventId is only needed for NEW events sent without a producer assigned id
+    @Query(value = "SELECT NEXT VALUE FOR hibernate_sequence", nativeQuery = true)
+    Long nextLibraryEventId();
+
+    @Modifying
+    @Query(value = "MERGE INTO library_event (library_event_id, library_event_type) KEY (library_event_id) " +
+            "VALUES (:libraryEventId, :libraryEventType)", nativeQuery = true)
+    int upsertLibraryEvent(@Param("libraryEventId") Long libraryEventId, @Param("libraryEventType") String libraryEventType);
+
+    @Modifying
+    @Query(value = "UPDATE library_event SET library_event_type = :libraryEventType WHERE library_event_id = :libraryEventId", nativeQuery = true)
+    int updateLibraryEvent(@Param("libraryEventId") Long libraryEventId, @Param("libraryEventType") String libraryEventType);
+
+    @Modifying
+    @Query(value = "MERGE INTO book (book_id, book_name, book_author, library_event_id) KEY (book_id) " +
+            "VALUES (:bookId, :bookName, :bookAuthor, :libraryEventId)", nativeQuery = true)
+    int upsertBook(@Param("bookId") Integer bookId, @Param("bookName") String bookName,
+                   @Param("bookAuthor") String bookAuthor, @Param("libraryEventId") Long libraryEventId);
 }
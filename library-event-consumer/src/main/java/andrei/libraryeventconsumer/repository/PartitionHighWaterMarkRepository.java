@@ -0,0 +1,17 @@
+package andrei.libraryeventconsumer.repository;
+
+import andrei.libraryeventconsumer.entity.PartitionHighWaterMark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface PartitionHighWaterMarkRepository extends JpaRepository<PartitionHighWaterMark, String> {
+
+    @Transactional
+    @Modifying
+    @Query(value = "MERGE INTO partition_high_water_mark (topic_partition, applied_offset) KEY (topic_partition) " +
+            "VALUES (:topicPartition, :appliedOffset)", nativeQuery = true)
+    int upsertHighWaterMark(@Param("topicPartition") String topicPartition, @Param("appliedOffset") long appliedOffset);
+}
@@ -0,0 +1,17 @@
+package andrei.libraryeventconsumer.repository;
+
+import andrei.libraryeventconsumer.entity.PendingDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface PendingDeadLetterRepository extends JpaRepository<PendingDeadLetter, String> {
+
+    //the consumer offsets committed with their DLT records have passed them, the broker does not redeliver them again
+    @Transactional
+    @Modifying
+    @Query("delete from PendingDeadLetter p where p.topicPartition = :topicPartition and p.recordOffset < :committedOffset")
+    int deleteCommitted(@Param("topicPartition") String topicPartition, @Param("committedOffset") long committedOffset);
+}
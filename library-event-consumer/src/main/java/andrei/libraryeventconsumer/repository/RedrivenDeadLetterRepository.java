@@ -0,0 +1,17 @@
+package andrei.libraryeventconsumer.repository;
+
+import andrei.libraryeventconsumer.entity.RedrivenDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface RedrivenDeadLetterRepository extends JpaRepository<RedrivenDeadLetter, String> {
+
+    //the committed redrive offset has passed them, no call reads them again
+    @Transactional
+    @Modifying
+    @Query("delete from RedrivenDeadLetter r where r.topicPartition = :topicPartition and r.recordOffset < :committedOffset")
+    int deleteCommitted(@Param("topicPartition") String topicPartition, @Param("committedOffset") long committedOffset);
+}
@@ -0,0 +1,53 @@
+package andrei.libraryeventconsumer.serialization;
+
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Reads the compact binary form of a library event, resolving the writer schema version into the latest local schema.
+//Fields a newer writer added are skipped and fields an older writer did not have get their schema default.
+public class LibraryEventAvroCodec {
+
+    private final LibraryEventSchemaRegistry schemaRegistry;
+    private final Map<Integer, GenericDatumReader<GenericRecord>> readers = new ConcurrentHashMap<>();
+
+    public LibraryEventAvroCodec(LibraryEventSchemaRegistry schemaRegistry) {
+        this.schemaRegistry = schemaRegistry;
+    }
+
+    public LibraryEvent decode(byte[] data, int writerSchemaVersion) {
+        final GenericDatumReader<GenericRecord> reader = readers.computeIfAbsent(writerSchemaVersion,
+                version -> new GenericDatumReader<>(schemaRegistry.schema(version), schemaRegistry.latestSchema()));
+        final GenericRecord libraryEventRecord;
+        try {
+            libraryEventRecord = reader.read(null, DecoderFactory.get().binaryDecoder(data, null));
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Error decoding the library event with schema version " + writerSchemaVersion, e);
+        }
+
+        final Object libraryEventType = libraryEventRecord.get("libraryEventType");
+        final GenericRecord bookRecord = (GenericRecord) libraryEventRecord.get("book");
+        return LibraryEvent.builder()
+                .libraryEventId((Long) libraryEventRecord.get("libraryEventId"))
+                .libraryEventType(libraryEventType != null ? LibraryEventType.valueOf(libraryEventType.toString()) : null)
+                .book(Book.builder()
+                        .bookId((Integer) bookRecord.get("bookId"))
+                        .bookName(asString(bookRecord.get("bookName")))
+                        .bookAuthor(asString(bookRecord.get("bookAuthor")))
+                        .build())
+                .build();
+    }
+
+    //avro strings come back as Utf8
+    private static String asString(Object value) {
+        return value != null ? value.toString() : null;
+    }
+}
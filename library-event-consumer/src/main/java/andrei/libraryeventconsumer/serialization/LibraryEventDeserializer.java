@@ -0,0 +1,54 @@
+package andrei.libraryeventconsumer.serialization;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.io.IOException;
+
+//Parses the record bytes straight into a LibraryEvent, without decoding them into an intermediate String first.
+//Configured as the delegate of an ErrorHandlingDeserializer, so a bad payload reaches the error handler instead of looping.
+//The library-event-format header selects JSON or the binary avro form, so both kinds of producer can write to the topic.
+public class LibraryEventDeserializer implements Deserializer<LibraryEvent> {
+
+    //ObjectReader is immutable and thread safe, building it once keeps the per record cost to the parse itself
+    private static final ObjectReader LIBRARY_EVENT_READER = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .readerFor(LibraryEvent.class);
+    private static final LibraryEventAvroCodec AVRO_CODEC = new LibraryEventAvroCodec(LibraryEventSchemaRegistry.fromClasspath());
+    //Kafka instantiates deserializers itself, so the timers live on the global registry Spring Boot adds its registries to
+    private static final Timer JSON_TIMER = Metrics.timer("library.events.consumer.deserialize", "format", LibraryEventHeaders.JSON);
+    private static final Timer AVRO_TIMER = Metrics.timer("library.events.consumer.deserialize", "format", LibraryEventHeaders.AVRO);
+
+    @Override
+    public LibraryEvent deserialize(String topic, Headers headers, byte[] data) {
+        if(data != null && LibraryEventHeaders.AVRO.equals(LibraryEventHeaders.format(headers))) {
+            return AVRO_TIMER.record(() -> {
+                try {
+                    return AVRO_CODEC.decode(data, LibraryEventHeaders.schemaVersion(headers));
+                } catch (IllegalArgumentException e) {
+                    throw new SerializationException("Invalid schema version header on a record from topic " + topic, e);
+                }
+            });
+        }
+        return JSON_TIMER.record(() -> deserialize(topic, data));
+    }
+
+    @Override
+    public LibraryEvent deserialize(String topic, byte[] data) {
+        if(data == null) {
+            return null;
+        }
+        try {
+            return LIBRARY_EVENT_READER.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Error deserializing the library event from topic " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package andrei.libraryeventconsumer.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.ByteBuffer;
+
+//libraryEventId keys are 64 bit producer generated ids, written by a LongSerializer. Records from before that change
+//still carry 4 byte IntegerSerializer keys in library-events and in the DLT, they are read as the same id widened.
+public class LibraryEventKeyDeserializer implements Deserializer<Long> {
+
+    @Override
+    public Long deserialize(String topic, byte[] data) {
+        if(data == null) {
+            return null;
+        }
+        if(data.length == Long.BYTES) {
+            return ByteBuffer.wrap(data).getLong();
+        }
+        if(data.length == Integer.BYTES) {
+            return (long) ByteBuffer.wrap(data).getInt();
+        }
+        throw new SerializationException("Library event key of " + data.length + " bytes is neither an int nor a long");
+    }
+}
@@ -0,0 +1,67 @@
+package andrei.libraryeventconsumer.serialization;
+
+import org.apache.avro.Schema;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//File based stand-in for a schema registry: every avro/library-event-v<N>.avsc on the classpath is schema version N.
+//Producers write with the latest version, consumers read any known version into their latest one, so a new field
+//only needs a default and the consumers deployed with the new .avsc before the producers start writing it.
+public class LibraryEventSchemaRegistry {
+
+    private static final String SCHEMA_LOCATION = "classpath*:avro/library-event-v*.avsc";
+    private static final Pattern SCHEMA_VERSION = Pattern.compile("library-event-v(\\d+)\\.avsc");
+
+    private final NavigableMap<Integer, Schema> schemas;
+
+    public LibraryEventSchemaRegistry(Map<Integer, Schema> schemas) {
+        if(schemas.isEmpty()) {
+            throw new IllegalStateException("No library event schema found");
+        }
+        this.schemas = new TreeMap<>(schemas);
+    }
+
+    public static LibraryEventSchemaRegistry fromClasspath() {
+        final Map<Integer, Schema> schemas = new TreeMap<>();
+        try {
+            for(Resource resource : new PathMatchingResourcePatternResolver().getResources(SCHEMA_LOCATION)) {
+                final Matcher matcher = SCHEMA_VERSION.matcher(String.valueOf(resource.getFilename()));
+                if(matcher.matches()) {
+                    try (InputStream inputStream = resource.getInputStream()) {
+                        //one parser per file, a parser refuses to define the same record name twice
+                        schemas.put(Integer.valueOf(matcher.group(1)), new Schema.Parser().parse(inputStream));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to load the library event schemas", e);
+        }
+        return new LibraryEventSchemaRegistry(schemas);
+    }
+
+    public Schema schema(int version) {
+        final Schema schema = schemas.get(version);
+        if(schema == null) {
+            throw new SerializationException("Unknown library event schema version " + version);
+        }
+        return schema;
+    }
+
+    public int latestVersion() {
+        return schemas.lastKey();
+    }
+
+    public Schema latestSchema() {
+        return schemas.lastEntry().getValue();
+    }
+}
@@ -0,0 +1,36 @@
+package andrei.libraryeventconsumer.serialization;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+//Counterpart of LibraryEventDeserializer, used where the consumer republishes typed records (retry topics).
+//Records are always republished as JSON, whatever format they arrived in, and the format header is reset to match.
+public class LibraryEventSerializer implements Serializer<LibraryEvent> {
+
+    private static final ObjectWriter LIBRARY_EVENT_WRITER = new ObjectMapper().writerFor(LibraryEvent.class);
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, LibraryEvent libraryEvent) {
+        if(headers != null && libraryEvent != null) {
+            LibraryEventHeaders.setFormat(headers, LibraryEventHeaders.JSON);
+        }
+        return serialize(topic, libraryEvent);
+    }
+
+    @Override
+    public byte[] serialize(String topic, LibraryEvent libraryEvent) {
+        if(libraryEvent == null) {
+            return null;
+        }
+        try {
+            return LIBRARY_EVENT_WRITER.writeValueAsBytes(libraryEvent);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Error serializing the library event for topic " + topic, e);
+        }
+    }
+}
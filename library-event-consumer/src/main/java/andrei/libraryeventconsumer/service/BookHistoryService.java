@@ -0,0 +1,94 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.BookSnapshot;
+import andrei.libraryeventconsumer.entity.LibraryEventLog;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.repository.BookSnapshotRepository;
+import andrei.libraryeventconsumer.repository.LibraryEventLogRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+//Historical state of a book in the event-log persistence mode: the latest snapshot before the requested point
+//plus the log rows between it and the next snapshot, so a read costs two snapshot lookups and at most
+//snapshot-interval rows whatever the length of the history.
+@Service
+@RequiredArgsConstructor
+public class BookHistoryService {
+
+    private final LibraryEventLogRepository libraryEventLogRepository;
+    private final BookSnapshotRepository bookSnapshotRepository;
+    private final LibraryEventsConsumerProperties consumerProperties;
+
+    public boolean isSnapshotDue(long bookVersion) {
+        final int snapshotInterval = consumerProperties.getEventLog().getSnapshotInterval();
+        return snapshotInterval > 0 && bookVersion % snapshotInterval == 0;
+    }
+
+    //called in the transaction appending the log rows, once they are flushed
+    public void writeSnapshot(Integer bookId, long bookVersion) {
+        final Optional<BookSnapshot> previous = bookSnapshotRepository.findFirstByBookIdAndBookVersionLessThanOrderByBookVersionDesc(bookId, bookVersion);
+        final List<LibraryEventLog> delta = libraryEventLogRepository.findByBookIdAndBookVersionBetweenOrderByBookVersion(bookId,
+                previous.map(BookSnapshot::getBookVersion).orElse(0L) + 1, bookVersion);
+        bookSnapshotRepository.save(replay(previous.orElse(null), delta));
+    }
+
+    //offsets of a book only compare while its events stay on one partition, as the producer's book-affinity partitioning keeps them;
+    //with keyed partitioning an offset of one partition says nothing about the events on the others
+    @Transactional(readOnly = true)
+    public Optional<BookSnapshot> findBookAsOfOffset(Integer bookId, long offset) {
+        if(!consumerProperties.getEventLog().isBookAffinityPartitioning()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "As-of-offset lookups need the producer's book-affinity partitioning "
+                    + "(library-events.consumer.event-log.book-affinity-partitioning), look up by timestamp instead");
+        }
+        return findBookAsOf(bookId, bookSnapshotRepository.findFirstByBookIdAndRecordOffsetLessThanEqualOrderByBookVersionDesc(bookId, offset),
+                entry -> entry.getRecordOffset() <= offset);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<BookSnapshot> findBookAsOfTimestamp(Integer bookId, Instant timestamp) {
+        return findBookAsOf(bookId, bookSnapshotRepository.findFirstByBookIdAndRecordTimestampLessThanEqualOrderByBookVersionDesc(bookId, timestamp),
+                entry -> !entry.getRecordTimestamp().isAfter(timestamp));
+    }
+
+    //the delta stops at the first event past the requested point, so a late timestamp cannot pull in later versions
+    private Optional<BookSnapshot> findBookAsOf(Integer bookId, Optional<BookSnapshot> snapshot, Predicate<LibraryEventLog> asOf) {
+        final long fromBookVersion = snapshot.map(BookSnapshot::getBookVersion).orElse(0L);
+        final long toBookVersion = bookSnapshotRepository.findFirstByBookIdAndBookVersionGreaterThanOrderByBookVersion(bookId, fromBookVersion)
+                .map(BookSnapshot::getBookVersion)
+                .orElse(Long.MAX_VALUE);
+        final List<LibraryEventLog> delta = libraryEventLogRepository.findByBookIdAndBookVersionBetweenOrderByBookVersion(bookId,
+                        fromBookVersion + 1, toBookVersion - 1).stream()
+                .takeWhile(asOf)
+                .collect(Collectors.toList());
+        return Optional.ofNullable(replay(snapshot.orElse(null), delta));
+    }
+
+    //each event carries the whole book, the fold keeps the last one and counts the UPDATEs
+    static BookSnapshot replay(BookSnapshot snapshot, List<LibraryEventLog> delta) {
+        BookSnapshot state = snapshot;
+        for(LibraryEventLog entry : delta) {
+            state = BookSnapshot.builder()
+                    .bookId(entry.getBookId())
+                    .bookVersion(entry.getBookVersion())
+                    .bookName(entry.getBookName())
+                    .bookAuthor(entry.getBookAuthor())
+                    .libraryEventId(entry.getLibraryEventId())
+                    .updateCount((state == null ? 0 : state.getUpdateCount()) + (entry.getLibraryEventType() == LibraryEventType.UPDATE ? 1 : 0))
+                    .recordPartition(entry.getRecordPartition())
+                    .recordOffset(entry.getRecordOffset())
+                    .recordTimestamp(entry.getRecordTimestamp())
+                    .build();
+        }
+        return state;
+    }
+}
@@ -0,0 +1,147 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.logging.SampledLogFilter;
+import andrei.libraryeventconsumer.serialization.LibraryEventHeaders;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+//Publishes failed records to library-events-dlt with the failure metadata needed to triage and redrive them.
+//Values are sent as raw bytes, so the DLT keeps whatever wire format the record arrived with.
+//In exactly-once delivery the producer is transactional: a record dead-lettered inside the listener transaction
+//is only published if the batch commits, sends made outside of one stay non-transactional.
+@Component
+@Slf4j
+public class LibraryEventsDeadLetterPublisher implements DisposableBean {
+
+    public static final String DLT_TOPIC = "library-events-dlt";
+    public static final String ATTEMPTS_HEADER = "library-events-attempts";
+
+    private final ObjectMapper objectMapper;
+    private final DefaultKafkaProducerFactory<Long, byte[]> producerFactory;
+    private final KafkaTemplate<Long, byte[]> kafkaTemplate;
+
+    public LibraryEventsDeadLetterPublisher(KafkaProperties kafkaProperties, ObjectMapper objectMapper,
+                                            LibraryEventsConsumerProperties consumerProperties) {
+        this.objectMapper = objectMapper;
+        this.producerFactory = new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties(),
+                new LongSerializer(), new ByteArraySerializer());
+        if(consumerProperties.isExactlyOnce()) {
+            producerFactory.setTransactionIdPrefix(consumerProperties.getTransactionIdPrefix() != null
+                    ? consumerProperties.getTransactionIdPrefix() : "library-events-consumer-tx-" + UUID.randomUUID() + "-");
+        }
+        this.kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        this.kafkaTemplate.setAllowNonTransactional(true);
+    }
+
+    public ListenableFuture<SendResult<Long, byte[]>> publish(ConsumerRecord<Long, ?> consumerRecord, Throwable throwable, int attempts) {
+        final Headers headers = deadLetterHeaders(consumerRecord, throwable, attempts);
+        byte[] value = rawValue(throwable);
+        if(value == null) {
+            //the typed value is re-encoded as JSON, so the format header must no longer claim the original binary form
+            value = toBytes(consumerRecord.value());
+            if(!(consumerRecord.value() instanceof byte[])) {
+                LibraryEventHeaders.setFormat(headers, LibraryEventHeaders.JSON);
+            }
+        }
+        final ProducerRecord<Long, byte[]> producerRecord = new ProducerRecord<>(DLT_TOPIC, null, null, consumerRecord.key(),
+                value, headers);
+
+        final ListenableFuture<SendResult<Long, byte[]>> sendResultListenableFuture = kafkaTemplate.send(producerRecord);
+        sendResultListenableFuture.addCallback(new ListenableFutureCallback<>() {
+            @Override
+            public void onFailure(Throwable ex) {
+                log.error("Error sending the record {} to the DLT and the exception is {}", consumerRecord, ex.getMessage());
+            }
+
+            @Override
+            public void onSuccess(SendResult<Long, byte[]> result) {
+                log.info(SampledLogFilter.SAMPLED, "event=record.dead-lettered key={} partition={}", consumerRecord.key(), result.getRecordMetadata().partition());
+            }
+        });
+        return sendResultListenableFuture;
+    }
+
+    public KafkaTemplate<Long, byte[]> getKafkaTemplate() {
+        return kafkaTemplate;
+    }
+
+    public DefaultKafkaProducerFactory<Long, byte[]> getProducerFactory() {
+        return producerFactory;
+    }
+
+    @Override
+    public void destroy() {
+        producerFactory.destroy();
+    }
+
+    private Headers deadLetterHeaders(ConsumerRecord<Long, ?> consumerRecord, Throwable throwable, int attempts) {
+        final Headers headers = new RecordHeaders(consumerRecord.headers().toArray());
+        final Throwable cause = throwable == null ? null : NestedExceptionUtils.getMostSpecificCause(throwable);
+        headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, consumerRecord.topic().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(consumerRecord.partition()).array());
+        headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(consumerRecord.offset()).array());
+        headers.add(KafkaHeaders.DLT_ORIGINAL_TIMESTAMP, ByteBuffer.allocate(Long.BYTES).putLong(consumerRecord.timestamp()).array());
+        if(cause != null) {
+            headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, cause.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8));
+        }
+        //a redriven record carries the attempts of its earlier trips through the DLT
+        final Header previousAttempts = headers.lastHeader(ATTEMPTS_HEADER);
+        final int totalAttempts = attempts + (previousAttempts != null && previousAttempts.value().length == Integer.BYTES
+                ? ByteBuffer.wrap(previousAttempts.value()).getInt() : 0);
+        headers.remove(ATTEMPTS_HEADER);
+        headers.add(ATTEMPTS_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(totalAttempts).array());
+        return headers;
+    }
+
+    //a record that could not be deserialized has no value, the original bytes travel inside the exception
+    private byte[] rawValue(Throwable throwable) {
+        for(Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if(cause instanceof DeserializationException deserializationException && !deserializationException.isKey()) {
+                return deserializationException.getData();
+            }
+        }
+        return null;
+    }
+
+    private byte[] toBytes(Object value) {
+        if(value == null) {
+            return null;
+        }
+        if(value instanceof byte[] bytes) {
+            return bytes;
+        }
+        if(value instanceof String string) {
+            return string.getBytes(StandardCharsets.UTF_8);
+        }
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize the DLT value " + value, e);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.RedrivenDeadLetter;
+import andrei.libraryeventconsumer.repository.RedrivenDeadLetterRepository;
+import andrei.libraryeventconsumer.serialization.LibraryEventKeyDeserializer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+//Replays records from library-events-dlt back into library-events at a fixed rate.
+//Progress is committed under its own group, so repeated calls keep draining the DLT where the last one stopped;
+//the commit never passes a record whose send failed, and records sent back beyond the commit are remembered in
+//redriven_dead_letter so that no call sends them twice.
+//A record goes back to the library-events partition it was dead-lettered from, keeping its place among the events of its book.
+//Redrives run one at a time on their own thread, a caller gets a job back and polls it for the summary.
+@Component
+@Slf4j
+public class LibraryEventsDeadLetterRedriver implements DisposableBean {
+
+    private static final String TOPIC_NAME = "library-events";
+    private static final String REDRIVE_GROUP_ID = "library-events-dlt-redrive";
+    private static final int MAX_REMEMBERED_JOBS = 100;
+
+    private final DefaultKafkaConsumerFactory<Long, byte[]> consumerFactory;
+    private final KafkaTemplate<Long, byte[]> kafkaTemplate;
+    private final LibraryEventsConsumerProperties.DeadLetter deadLetter;
+    private final RedrivenDeadLetterRepository redrivenDeadLetterRepository;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "library-events-dlt-redrive");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //the latest jobs by id, older ones are evicted
+    private final Map<String, RedriveJob> jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, RedriveJob> eldest) {
+            return size() > MAX_REMEMBERED_JOBS;
+        }
+    });
+
+    public LibraryEventsDeadLetterRedriver(KafkaProperties kafkaProperties, LibraryEventsDeadLetterPublisher deadLetterPublisher,
+                                           LibraryEventsConsumerProperties consumerProperties, RedrivenDeadLetterRepository redrivenDeadLetterRepository) {
+        final Map<String, Object> consumerConfigs = new HashMap<>(kafkaProperties.buildConsumerProperties());
+        consumerConfigs.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerConfigs.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        this.consumerFactory = new DefaultKafkaConsumerFactory<>(consumerConfigs, new LibraryEventKeyDeserializer(), new ByteArrayDeserializer());
+        this.kafkaTemplate = deadLetterPublisher.getKafkaTemplate();
+        this.deadLetter = consumerProperties.getDeadLetter();
+        this.redrivenDeadLetterRepository = redrivenDeadLetterRepository;
+    }
+
+    public RedriveJob submit(RedriveRequest request) {
+        final RedriveJob job = RedriveJob.builder()
+                .id(UUID.randomUUID().toString())
+                .status(RedriveStatus.QUEUED)
+                .request(request)
+                .build();
+        jobs.put(job.getId(), job);
+        executor.execute(() -> run(job));
+        return job;
+    }
+
+    public Optional<RedriveJob> findJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    private void run(RedriveJob job) {
+        jobs.put(job.getId(), job.toBuilder().status(RedriveStatus.RUNNING).build());
+        try {
+            final RedriveSummary summary = redrive(job.getRequest());
+            jobs.put(job.getId(), job.toBuilder().status(RedriveStatus.COMPLETED).summary(summary).build());
+        } catch (RuntimeException e) {
+            log.error("Redrive {} failed", job.getId(), e);
+            jobs.put(job.getId(), job.toBuilder().status(RedriveStatus.FAILED).error(e.getMessage()).build());
+        }
+    }
+
+    //only ever called from the redrive thread
+    RedriveSummary redrive(RedriveRequest request) {
+        final int maxRecords = request.getMaxRecords() != null ? request.getMaxRecords() : deadLetter.getRedriveMaxRecords();
+        final int ratePerSecond = request.getRatePerSecond() != null ? request.getRatePerSecond() : deadLetter.getRedriveRatePerSecond();
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, ratePerSecond);
+        final boolean filtered = request.getExceptionClass() != null;
+
+        int sent = 0;
+        int skipped = 0;
+        //per DLT partition in offset order, the send of each record this call read, null when it was not sent
+        final Map<TopicPartition, List<Redrive>> redrives = new LinkedHashMap<>();
+        try (Consumer<Long, byte[]> consumer = consumerFactory.createConsumer(REDRIVE_GROUP_ID, null)) {
+            final List<TopicPartition> partitions = consumer.partitionsFor(LibraryEventsDeadLetterPublisher.DLT_TOPIC).stream()
+                    .filter(partitionInfo -> request.getPartition() == null || request.getPartition().equals(partitionInfo.partition()))
+                    .map(partitionInfo -> new TopicPartition(partitionInfo.topic(), partitionInfo.partition()))
+                    .collect(Collectors.toList());
+            if(partitions.isEmpty()) {
+                return RedriveSummary.builder().nextOffsets(new TreeMap<>()).build();
+            }
+            consumer.assign(partitions);
+            if(request.getFromOffset() != null) {
+                partitions.forEach(topicPartition -> consumer.seek(topicPartition, request.getFromOffset()));
+            }
+            //only what is in the DLT right now, records dead-lettered during the redrive wait for the next call
+            final Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+            long nextSendNanos = System.nanoTime();
+            while(sent < maxRecords && !reachedEnd(consumer, endOffsets)) {
+                final List<ConsumerRecord<Long, byte[]>> consumerRecords = new ArrayList<>();
+                consumer.poll(Duration.ofMillis(500)).forEach(consumerRecords::add);
+                final Set<String> alreadyRedriven = redrivenDeadLetterRepository.findAllById(consumerRecords.stream()
+                                .map(LibraryEventsDeadLetterRedriver::recordId)
+                                .collect(Collectors.toList())).stream()
+                        .map(RedrivenDeadLetter::getRecordId)
+                        .collect(Collectors.toSet());
+                for(ConsumerRecord<Long, byte[]> consumerRecord : consumerRecords) {
+                    final TopicPartition topicPartition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+                    if(sent >= maxRecords || consumerRecord.offset() >= endOffsets.get(topicPartition)) {
+                        consumer.seek(topicPartition, consumerRecord.offset());
+                        continue;
+                    }
+                    CompletableFuture<SendResult<Long, byte[]>> send = null;
+                    if(!alreadyRedriven.contains(recordId(consumerRecord)) && matches(request, consumerRecord)) {
+                        LockSupport.parkNanos(nextSendNanos - System.nanoTime());
+                        nextSendNanos = Math.max(nextSendNanos, System.nanoTime()) + intervalNanos;
+                        send = send(new ProducerRecord<>(TOPIC_NAME, originalPartition(consumerRecord.headers()), null,
+                                consumerRecord.key(), consumerRecord.value(), redriveHeaders(consumerRecord.headers())));
+                        sent++;
+                    } else {
+                        skipped++;
+                    }
+                    redrives.computeIfAbsent(topicPartition, key -> new ArrayList<>()).add(new Redrive(consumerRecord.offset(), send));
+                }
+            }
+            kafkaTemplate.flush();
+
+            //a partition only moves on up to its first failed send, what was acknowledged past that point is remembered
+            int redriven = 0;
+            int failed = 0;
+            String failure = null;
+            final Map<Integer, Long> nextOffsets = new TreeMap<>();
+            final List<RedrivenDeadLetter> redrivenAhead = new ArrayList<>();
+            for(Map.Entry<TopicPartition, List<Redrive>> partitionRedrives : redrives.entrySet()) {
+                final TopicPartition topicPartition = partitionRedrives.getKey();
+                boolean blocked = false;
+                for(Redrive redrive : partitionRedrives.getValue()) {
+                    if(redrive.send() != null) {
+                        try {
+                            redrive.send().join();
+                            redriven++;
+                            //a filtered call commits nothing, so everything it sent is ahead of the commit
+                            if(filtered || blocked) {
+                                redrivenAhead.add(RedrivenDeadLetter.builder()
+                                        .recordId(recordId(topicPartition, redrive.offset()))
+                                        .topicPartition(topicPartition.toString())
+                                        .recordOffset(redrive.offset())
+                                        .build());
+                            }
+                        } catch (CompletionException e) {
+                            log.error("Redrive of {} offset {} failed and the exception is {}", topicPartition, redrive.offset(), e.getCause().getMessage());
+                            failed++;
+                            failure = e.getCause().getMessage();
+                            blocked = true;
+                        }
+                    }
+                    if(!blocked) {
+                        nextOffsets.put(topicPartition.partition(), redrive.offset() + 1);
+                    }
+                }
+            }
+            redrivenDeadLetterRepository.saveAll(redrivenAhead);
+            //a filtered redrive leaves the other records in place for a later call
+            if(!filtered && !nextOffsets.isEmpty()) {
+                commit(consumer, nextOffsets);
+            }
+            log.info("Redrive finished, {} records sent back to {}, {} failed and {} skipped", redriven, TOPIC_NAME, failed, skipped);
+            return RedriveSummary.builder()
+                    .redriven(redriven)
+                    .skipped(skipped)
+                    .failed(failed)
+                    .failure(failure)
+                    .nextOffsets(nextOffsets)
+                    .build();
+        }
+    }
+
+    private void commit(Consumer<Long, byte[]> consumer, Map<Integer, Long> nextOffsets) {
+        consumer.commitSync(nextOffsets.entrySet().stream().collect(Collectors.toMap(
+                entry -> new TopicPartition(LibraryEventsDeadLetterPublisher.DLT_TOPIC, entry.getKey()),
+                entry -> new OffsetAndMetadata(entry.getValue()))));
+        nextOffsets.forEach((partition, offset) -> redrivenDeadLetterRepository.deleteCommitted(
+                new TopicPartition(LibraryEventsDeadLetterPublisher.DLT_TOPIC, partition).toString(), offset));
+    }
+
+    //the template throws when the record cannot even be handed to the producer, that counts as a failed send too
+    private CompletableFuture<SendResult<Long, byte[]>> send(ProducerRecord<Long, byte[]> producerRecord) {
+        try {
+            return kafkaTemplate.send(producerRecord).completable();
+        } catch (KafkaException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static String recordId(ConsumerRecord<?, ?> consumerRecord) {
+        return recordId(new TopicPartition(consumerRecord.topic(), consumerRecord.partition()), consumerRecord.offset());
+    }
+
+    private static String recordId(TopicPartition topicPartition, long offset) {
+        return topicPartition + "@" + offset;
+    }
+
+    //the partition of library-events the record was dead-lettered from, the default partitioner only when it is unknown
+    private static Integer originalPartition(Headers headers) {
+        final Header originalTopic = headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        final Header originalPartition = headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_PARTITION);
+        if(originalTopic == null || originalPartition == null || originalPartition.value().length != Integer.BYTES
+                || !TOPIC_NAME.equals(new String(originalTopic.value(), StandardCharsets.UTF_8))) {
+            return null;
+        }
+        return ByteBuffer.wrap(originalPartition.value()).getInt();
+    }
+
+    private boolean reachedEnd(Consumer<Long, byte[]> consumer, Map<TopicPartition, Long> endOffsets) {
+        return endOffsets.entrySet().stream().allMatch(entry -> consumer.position(entry.getKey()) >= entry.getValue());
+    }
+
+    private boolean matches(RedriveRequest request, ConsumerRecord<Long, byte[]> consumerRecord) {
+        if(request.getExceptionClass() == null) {
+            return true;
+        }
+        final Header exceptionHeader = consumerRecord.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_FQCN);
+        return exceptionHeader != null && request.getExceptionClass().equals(new String(exceptionHeader.value(), StandardCharsets.UTF_8));
+    }
+
+    //the DLT metadata is dropped so a record that fails again gets fresh metadata, the attempts count is kept
+    private Headers redriveHeaders(Headers deadLetterHeaders) {
+        final Headers headers = new RecordHeaders();
+        for(Header header : deadLetterHeaders) {
+            if(!header.key().startsWith(KafkaHeaders.PREFIX + "dlt-")) {
+                headers.add(header);
+            }
+        }
+        return headers;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public enum RedriveStatus {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder(toBuilder = true)
+    public static class RedriveJob {
+        private String id;
+        private RedriveStatus status;
+        private RedriveRequest request;
+        private RedriveSummary summary;
+        private String error;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class RedriveRequest {
+        private Integer partition;
+        private Long fromOffset;
+        private Integer maxRecords;
+        private Integer ratePerSecond;
+        private String exceptionClass;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class RedriveSummary {
+        //acknowledged by the broker
+        private int redriven;
+        //filtered out or already sent back by an earlier call
+        private int skipped;
+        //their partition is not committed past the first one, the next call sends them again
+        private int failed;
+        private String failure;
+        private Map<Integer, Long> nextOffsets;
+    }
+
+    private record Redrive(long offset, CompletableFuture<SendResult<Long, byte[]>> send) {
+    }
+}
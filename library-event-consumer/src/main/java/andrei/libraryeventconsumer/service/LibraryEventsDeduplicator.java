@@ -0,0 +1,240 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.PartitionHighWaterMark;
+import andrei.libraryeventconsumer.entity.PendingDeadLetter;
+import andrei.libraryeventconsumer.repository.PartitionHighWaterMarkRepository;
+import andrei.libraryeventconsumer.repository.PendingDeadLetterRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.adapter.RecordFilterStrategy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+//Drops redelivered records before they are persisted. A record is a duplicate when its offset
+//is at or below the partition high-water mark (rebalance/restart redelivery), or when its payload is the same
+//as the last one applied for its key (producer retries writing the same event twice).
+//The high-water mark can not tell a deliberate offset reset or replay from a redelivery, the replayed records at or
+//below it are dropped as well. Replay with idempotency.enabled=false, with the persistent mark also delete the
+//partition_high_water_mark rows of the replayed partitions before the consumers start.
+@Component
+@Slf4j
+public class LibraryEventsDeduplicator implements RecordFilterStrategy<Long, LibraryEvent> {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final LibraryEventsConsumerProperties.Idempotency idempotency;
+    //exactly-once delivery relies on the high-water mark committed with the rows to drop what the broker redelivers
+    private final boolean persistentHighWaterMark;
+    private final PartitionHighWaterMarkRepository highWaterMarkRepository;
+    //dead-lettered records the high-water mark already covers while their Kafka transaction may still roll back
+    private final boolean exactlyOnce;
+    private final PendingDeadLetterRepository pendingDeadLetterRepository;
+    private final Map<TopicPartition, Long> highWaterMarks = new ConcurrentHashMap<>();
+    private final Map<Object, Long> lastAppliedFingerprints;
+
+    public LibraryEventsDeduplicator(LibraryEventsConsumerProperties consumerProperties,
+                                     PartitionHighWaterMarkRepository highWaterMarkRepository,
+                                     PendingDeadLetterRepository pendingDeadLetterRepository) {
+        this.idempotency = consumerProperties.getIdempotency();
+        this.persistentHighWaterMark = idempotency.isPersistentHighWaterMark() || consumerProperties.isExactlyOnce();
+        this.highWaterMarkRepository = highWaterMarkRepository;
+        this.exactlyOnce = consumerProperties.isExactlyOnce();
+        this.pendingDeadLetterRepository = pendingDeadLetterRepository;
+        final int cacheSize = idempotency.getCacheSize();
+        this.lastAppliedFingerprints = new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Long> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    //true means the record is discarded by the container
+    @Override
+    public boolean filter(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        if(!idempotency.isEnabled()) {
+            return false;
+        }
+        if(consumerRecord.offset() <= highWaterMark(topicPartition(consumerRecord))) {
+            //its rows were committed but its DLT record was rolled back with the Kafka transaction, it has to be dead-lettered again
+            if(exactlyOnce && pendingDeadLetterRepository.existsById(recordId(consumerRecord))) {
+                log.info("Redelivered record was never dead-lettered, partition: {} offset: {}", consumerRecord.partition(), consumerRecord.offset());
+                return false;
+            }
+            log.info("Dropping redelivered record, partition: {} offset: {}", consumerRecord.partition(), consumerRecord.offset());
+            return true;
+        }
+        //a record the deserializer failed on has no payload to compare, it goes on to the error handler and the DLT
+        if(consumerRecord.value() == null) {
+            return false;
+        }
+        final long fingerprint = fingerprint(consumerRecord);
+        final Long lastAppliedFingerprint;
+        synchronized (lastAppliedFingerprints) {
+            lastAppliedFingerprint = lastAppliedFingerprints.get(cacheKey(consumerRecord, fingerprint));
+        }
+        if(lastAppliedFingerprint != null && lastAppliedFingerprint == fingerprint) {
+            log.info("Dropping duplicate record for the key: {}, partition: {} offset: {}", consumerRecord.key(), consumerRecord.partition(), consumerRecord.offset());
+            return true;
+        }
+        return false;
+    }
+
+    public void markApplied(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        markApplied(List.of(consumerRecord));
+    }
+
+    public void markApplied(Collection<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        if(!idempotency.isEnabled() || consumerRecords.isEmpty()) {
+            return;
+        }
+        final Map<TopicPartition, Long> appliedOffsets = new LinkedHashMap<>();
+        for(ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+            appliedOffsets.merge(topicPartition(consumerRecord), consumerRecord.offset(), Math::max);
+        }
+        if(persistentHighWaterMark) {
+            appliedOffsets.forEach((topicPartition, offset) -> highWaterMarkRepository.upsertHighWaterMark(topicPartition.toString(),
+                    Math.max(offset, highWaterMarks.getOrDefault(topicPartition, -1L))));
+        }
+        //inside a transaction the in-memory state only moves once the rows are committed, a rolled back batch is redelivered
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(consumerRecords, appliedOffsets);
+                }
+            });
+            return;
+        }
+        remember(consumerRecords, appliedOffsets);
+    }
+
+    //joins the JPA transaction that moves the high-water mark past the dead-lettered records
+    public void markDeadLettered(Collection<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        if(!idempotency.isEnabled() || !exactlyOnce || consumerRecords.isEmpty()) {
+            return;
+        }
+        pendingDeadLetterRepository.saveAll(consumerRecords.stream()
+                .map(consumerRecord -> PendingDeadLetter.builder()
+                        .recordId(recordId(consumerRecord))
+                        .topicPartition(topicPartition(consumerRecord).toString())
+                        .recordOffset(consumerRecord.offset())
+                        .build())
+                .collect(Collectors.toList()));
+    }
+
+    //called in the Kafka transaction, once it commits the DLT records and the consumer offsets of the batch are durable
+    public void releaseDeadLettered(Collection<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        if(!idempotency.isEnabled() || !exactlyOnce || consumerRecords.isEmpty()) {
+            return;
+        }
+        final Map<TopicPartition, Long> committedOffsets = new LinkedHashMap<>();
+        for(ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+            committedOffsets.merge(topicPartition(consumerRecord), consumerRecord.offset() + 1, Math::max);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committedOffsets.forEach((topicPartition, offset) -> pendingDeadLetterRepository.deleteCommitted(topicPartition.toString(), offset));
+            }
+        });
+    }
+
+    private void remember(Collection<ConsumerRecord<Long, LibraryEvent>> consumerRecords, Map<TopicPartition, Long> appliedOffsets) {
+        synchronized (lastAppliedFingerprints) {
+            for(ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+                //no payload, all of them would share the same fingerprint and drop each other
+                if(consumerRecord.value() == null) {
+                    continue;
+                }
+                final long fingerprint = fingerprint(consumerRecord);
+                lastAppliedFingerprints.put(cacheKey(consumerRecord, fingerprint), fingerprint);
+            }
+        }
+        appliedOffsets.forEach((topicPartition, offset) -> highWaterMarks.merge(topicPartition, offset, Math::max));
+    }
+
+    public void forget(Collection<TopicPartition> partitions) {
+        partitions.forEach(highWaterMarks::remove);
+    }
+
+    //one query for all newly assigned partitions before their first poll, their previous owner may have moved the marks on
+    public void warmUp(Collection<TopicPartition> partitions) {
+        if(!idempotency.isEnabled() || !persistentHighWaterMark || partitions.isEmpty()) {
+            return;
+        }
+        final Map<String, TopicPartition> topicPartitions = new HashMap<>();
+        for(TopicPartition topicPartition : partitions) {
+            topicPartitions.put(topicPartition.toString(), topicPartition);
+            highWaterMarks.put(topicPartition, -1L);
+        }
+        highWaterMarkRepository.findAllById(topicPartitions.keySet())
+                .forEach(highWaterMark -> highWaterMarks.put(topicPartitions.get(highWaterMark.getTopicPartition()), highWaterMark.getAppliedOffset()));
+    }
+
+    private long highWaterMark(TopicPartition topicPartition) {
+        if(!persistentHighWaterMark) {
+            return highWaterMarks.getOrDefault(topicPartition, -1L);
+        }
+        //one lookup per partition, every later check is a map read
+        return highWaterMarks.computeIfAbsent(topicPartition, partition -> highWaterMarkRepository.findById(partition.toString())
+                .map(PartitionHighWaterMark::getAppliedOffset)
+                .orElse(-1L));
+    }
+
+    private static String recordId(ConsumerRecord<?, ?> consumerRecord) {
+        return topicPartition(consumerRecord) + "@" + consumerRecord.offset();
+    }
+
+    private static TopicPartition topicPartition(ConsumerRecord<?, ?> consumerRecord) {
+        return new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+    }
+
+    //keyed records remember only the last payload per key, so A -> B -> A is still applied three times
+    private static Object cacheKey(ConsumerRecord<Long, LibraryEvent> consumerRecord, long fingerprint) {
+        return consumerRecord.key() != null ? consumerRecord.key() : fingerprint;
+    }
+
+    //64 bit FNV-1a of the payload fields, a 32 bit hashCode collides far too often to drop records on.
+    //The libraryEventId is left out, it is the record key and NEW events sent without one get it while they are saved.
+    static long fingerprint(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        long hash = FNV_OFFSET_BASIS;
+        final LibraryEvent libraryEvent = consumerRecord.value();
+        if(libraryEvent == null) {
+            return hash;
+        }
+        hash = fnv(hash, libraryEvent.getLibraryEventType());
+        final Book book = libraryEvent.getBook();
+        if(book != null) {
+            hash = fnv(hash, book.getBookId());
+            hash = fnv(hash, book.getBookName());
+            hash = fnv(hash, book.getBookAuthor());
+        }
+        return hash;
+    }
+
+    private static long fnv(long hash, Object field) {
+        final String value = String.valueOf(field);
+        for(int index = 0; index < value.length(); index++) {
+            hash ^= value.charAt(index);
+            hash *= FNV_PRIME;
+        }
+        //field separator, so "ab" + "c" and "a" + "bc" do not hash alike
+        hash ^= 0xff;
+        return hash * FNV_PRIME;
+    }
+}
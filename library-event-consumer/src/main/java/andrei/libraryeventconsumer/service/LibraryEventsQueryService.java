@@ -0,0 +1,116 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.repository.BookRepository;
+import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//Read side of the persisted library events, served from bounded in-process caches so repeated reads
+//do not take a DB connection away from the ingestion path.
+@Service
+@RequiredArgsConstructor
+public class LibraryEventsQueryService {
+
+    public static final String BOOKS_CACHE = "books";
+    public static final String LIBRARY_EVENTS_BY_BOOK_CACHE = "library-events-by-book";
+    public static final String BOOKS_BY_AUTHOR_CACHE = "books-by-author";
+
+    private final BookRepository bookRepository;
+    private final LibraryEventsRepository libraryEventsRepository;
+    private final CacheManager cacheManager;
+
+    @Cacheable(cacheNames = BOOKS_CACHE, key = "#bookId")
+    @Transactional(readOnly = true)
+    public Optional<Book> findBook(Integer bookId) {
+        return bookRepository.findById(bookId);
+    }
+
+    @Cacheable(cacheNames = LIBRARY_EVENTS_BY_BOOK_CACHE, key = "{#bookId, #pageable}")
+    @Transactional(readOnly = true)
+    public Page<LibraryEvent> findLibraryEventsByBook(Integer bookId, Pageable pageable) {
+        return libraryEventsRepository.findByBookBookId(bookId, pageable);
+    }
+
+    @Cacheable(cacheNames = BOOKS_BY_AUTHOR_CACHE, key = "{#bookAuthor, #pageable}")
+    @Transactional(readOnly = true)
+    public Page<Book> findBooksByAuthor(String bookAuthor, Pageable pageable) {
+        return bookRepository.findByBookAuthor(bookAuthor, pageable);
+    }
+
+    //books of newly assigned partitions, streamed so only the ones put in the cache are kept
+    @Transactional(readOnly = true)
+    public int warmUpBooks(IntPredicate bookFilter, int limit) {
+        final Cache books = cacheManager.getCache(BOOKS_CACHE);
+        try(Stream<BookRepository.BookView> bookViews = bookRepository.streamAllBy()) {
+            final List<Book> warmedUpBooks = bookViews
+                    .filter(bookView -> bookFilter.test(bookView.getBookId()))
+                    .limit(limit)
+                    .map(bookView -> Book.builder()
+                            .bookId(bookView.getBookId())
+                            .bookName(bookView.getBookName())
+                            .bookAuthor(bookView.getBookAuthor())
+                            .build())
+                    .collect(Collectors.toList());
+            warmedUpBooks.forEach(book -> books.put(book.getBookId(), book));
+            return warmedUpBooks.size();
+        }
+    }
+
+    //books of revoked partitions, their writes now go to another instance and would not evict them here
+    public void evictBooks(IntPredicate bookFilter) {
+        final Cache books = cacheManager.getCache(BOOKS_CACHE);
+        if(books.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+            nativeCache.asMap().keySet().removeIf(bookId -> bookId instanceof Integer id && bookFilter.test(id));
+            return;
+        }
+        books.clear();
+    }
+
+    public void evict(LibraryEvent libraryEvent) {
+        evict(List.of(libraryEvent));
+    }
+
+    //once the write is committed, otherwise a read in between could cache the old row again.
+    //Book lookups are evicted by id; a write can move a book between pages and authors, so the paged caches are cleared.
+    public void evict(Collection<LibraryEvent> libraryEvents) {
+        if(libraryEvents.isEmpty()) {
+            return;
+        }
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(libraryEvents);
+                }
+            });
+            return;
+        }
+        evictNow(libraryEvents);
+    }
+
+    private void evictNow(Collection<LibraryEvent> libraryEvents) {
+        final Cache books = cacheManager.getCache(BOOKS_CACHE);
+        libraryEvents.stream()
+                .filter(libraryEvent -> libraryEvent.getBook() != null)
+                .forEach(libraryEvent -> books.evict(libraryEvent.getBook().getBookId()));
+        cacheManager.getCache(LIBRARY_EVENTS_BY_BOOK_CACHE).clear();
+        cacheManager.getCache(BOOKS_BY_AUTHOR_CACHE).clear();
+    }
+}
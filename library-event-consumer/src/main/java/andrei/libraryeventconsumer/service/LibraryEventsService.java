@@ -1,113 +1,417 @@
 package andrei.libraryeventconsumer.service;
 
+import andrei.libraryeventconsumer.catalog.BookCatalog;
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
 import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventLog;
 import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.logging.SampledLogFilter;
+import andrei.libraryeventconsumer.repository.BookRepository;
+import andrei.libraryeventconsumer.repository.LibraryEventLogRepository;
 import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.log.LogAccessor;
 import org.springframework.dao.RecoverableDataAccessException;
-import org.springframework.kafka.core.KafkaTemplate;
-import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.listener.ListenerUtils;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
 import org.springframework.stereotype.Service;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class LibraryEventsService {
 
-    private final ObjectMapper objectMapper;
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(LibraryEventsService.class);
+    private static final String VALIDATE_TIMER = "library.events.consumer.validate";
+    private static final String PERSIST_TIMER = "library.events.consumer.persist";
+    //batches mix event types and partitions, they are tagged as such to keep one tag set per meter
+    private static final Tags BATCH_TAGS = Tags.of("event.type", "mixed", "partition", "mixed", "mode", "batch");
+
     private final LibraryEventsRepository repository;
-    private final KafkaTemplate<Integer, String> kafkaTemplate;
+    private final LibraryEventLogRepository libraryEventLogRepository;
+    private final BookRepository bookRepository;
+    private final BookHistoryService bookHistoryService;
+    private final LibraryEventsDeadLetterPublisher deadLetterPublisher;
+    private final LibraryEventsDeduplicator libraryEventsDeduplicator;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final LibraryEventsConsumerProperties consumerProperties;
+    private final MeterRegistry meterRegistry;
+    private final LibraryEventsQueryService queryService;
+    private final BookCatalog bookCatalog;
+
+    public void processLibraryEvent(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        final LibraryEvent libraryEvent = readLibraryEvent(consumerRecord);
+        final Tags tags = Tags.of("event.type", String.valueOf(libraryEvent.getLibraryEventType()),
+                "partition", String.valueOf(consumerRecord.partition()), "mode", "record");
+
+        if(isEventLogMode()) {
+            applied(meterRegistry.timer(PERSIST_TIMER, tags).record(() ->
+                    transactionTemplate.execute(status -> appendToLog(List.of(consumerRecord), false))));
+            log.info(SampledLogFilter.SAMPLED, "event=library-event.persisted libraryEventId={} type={}", libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType());
+        } else {
+            save(libraryEvent, tags);
+        }
+        libraryEventsDeduplicator.markApplied(consumerRecord);
+    }
 
-    public void processLibraryEvent(ConsumerRecord<Integer, String> consumerRecord) throws JsonProcessingException {
-        final LibraryEvent libraryEvent = objectMapper.readValue(consumerRecord.value(), LibraryEvent.class);
-        log.info("libraryEvent {}", libraryEvent);
+    public void processLibraryEvents(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        if(consumerProperties.isExactlyOnce()) {
+            //runs inside the container's Kafka transaction, the JPA one commits first and the high-water mark
+            //written with the rows drops the batch if the Kafka commit is lost and the broker redelivers it,
+            //except for the records dead-lettered in it until the Kafka commit makes their DLT records durable
+            transactionTemplate.executeWithoutResult(status -> processLibraryEventsExactlyOnce(consumerRecords));
+            libraryEventsDeduplicator.releaseDeadLettered(consumerRecords);
+            return;
+        }
+        List<ConsumerRecord<Long, LibraryEvent>> readRecords = new ArrayList<>(consumerRecords.size());
+        final Map<Integer, DeserializationException> unreadableRecords = new LinkedHashMap<>();
+        int failedIndex = consumerRecords.size();
+        RuntimeException failure = null;
+        for(int index = 0; index < consumerRecords.size(); index++) {
+            try {
+                readLibraryEvent(consumerRecords.get(index));
+                readRecords.add(consumerRecords.get(index));
+            } catch (DeserializationException e) {
+                unreadableRecords.put(index, e);
+            } catch (RecoverableDataAccessException e) {
+                failedIndex = index;
+                failure = e;
+                break;
+            }
+        }
+        //persist what came before the failed record so the error handler can commit up to it; an invalid UPDATE is
+        //only found while saving and fails the batch from its index, like in the record mode it is not retried
+        final int savedRecords = saveAll(readRecords);
+        if(savedRecords < readRecords.size()) {
+            failedIndex = consumerRecords.indexOf(readRecords.get(savedRecords));
+            failure = new IllegalArgumentException("Not a valid Library Event");
+        }
+        //a poison record would fail the same way on every retry, it goes straight to the DLT; the ones after the failed
+        //record are redelivered with it
+        for(Map.Entry<Integer, DeserializationException> unreadableRecord : unreadableRecords.entrySet()) {
+            if(unreadableRecord.getKey() < failedIndex) {
+                final ConsumerRecord<Long, LibraryEvent> consumerRecord = consumerRecords.get(unreadableRecord.getKey());
+                log.error("Skipping unreadable record {} and the exception is {}", consumerRecord, unreadableRecord.getValue().getMessage());
+                handleRecovery(consumerRecord, unreadableRecord.getValue(), 1);
+            }
+        }
+        libraryEventsDeduplicator.markApplied(consumerRecords.subList(0, failedIndex));
+        if(failure != null) {
+            throw new BatchListenerFailedException(failure.getMessage(), failure, failedIndex);
+        }
+    }
+
+    //a failing record is dead-lettered right away through the transactional producer instead of failing the batch,
+    //rolling back would redo every other record of the poll; the DLT redrive is the retry path in this mode
+    private void processLibraryEventsExactlyOnce(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        final List<ConsumerRecord<Long, LibraryEvent>> readRecords = new ArrayList<>(consumerRecords.size());
+        final List<ConsumerRecord<Long, LibraryEvent>> deadLetteredRecords = new ArrayList<>();
+        for(ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+            try {
+                readLibraryEvent(consumerRecord);
+                readRecords.add(consumerRecord);
+            } catch (DeserializationException | RecoverableDataAccessException e) {
+                log.error("Dead-lettering record {} and the exception is {}", consumerRecord, e.getMessage());
+                handleRecovery(consumerRecord, e, 1);
+                deadLetteredRecords.add(consumerRecord);
+            }
+        }
+        //an invalid UPDATE is dead-lettered in place, and the records after it are saved on their own
+        for(List<ConsumerRecord<Long, LibraryEvent>> unsavedRecords = readRecords; !unsavedRecords.isEmpty(); ) {
+            final int savedRecords = saveAll(unsavedRecords);
+            if(savedRecords == unsavedRecords.size()) {
+                break;
+            }
+            final ConsumerRecord<Long, LibraryEvent> invalidRecord = unsavedRecords.get(savedRecords);
+            handleRecovery(invalidRecord, new IllegalArgumentException("Not a valid Library Event"), 1);
+            deadLetteredRecords.add(invalidRecord);
+            unsavedRecords = unsavedRecords.subList(savedRecords + 1, unsavedRecords.size());
+        }
+        libraryEventsDeduplicator.markDeadLettered(deadLetteredRecords);
+        libraryEventsDeduplicator.markApplied(consumerRecords);
+    }
+
+    private LibraryEvent readLibraryEvent(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        final LibraryEvent libraryEvent = consumerRecord.value();
+        if(libraryEvent == null) {
+            throw deserializationException(consumerRecord);
+        }
+        log.debug("libraryEvent {}", libraryEvent);
 
         //Emulating recoverable scenario
-        if(libraryEvent.getLibraryEventId() != null && libraryEvent.getLibraryEventId().equals(111)) {
+        if(libraryEvent.getLibraryEventId() != null && libraryEvent.getLibraryEventId().equals(111L)) {
             throw new RecoverableDataAccessException("Temporary network issue");
         }
-
-        save(libraryEvent);
+        return libraryEvent;
     }
 
-    private void save(LibraryEvent libraryEvent) {
+    private void save(LibraryEvent libraryEvent, Tags tags) {
+        if(isUpsertMode()) {
+            meterRegistry.timer(PERSIST_TIMER, tags).record(() -> transactionTemplate.executeWithoutResult(status -> upsert(libraryEvent)));
+            applied(List.of(libraryEvent));
+            log.info(SampledLogFilter.SAMPLED, "event=library-event.persisted libraryEventId={} type={}", libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType());
+            return;
+        }
         libraryEvent.getBook().setLibraryEvent(libraryEvent);
         if(libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE)) {
-            validate(libraryEvent);
+            meterRegistry.timer(VALIDATE_TIMER, tags).record(() -> validate(libraryEvent, tags));
         }
-        repository.save(libraryEvent);
-        log.info("Successfully Persisted the library event {} ", libraryEvent);
+        meterRegistry.timer(PERSIST_TIMER, tags).record(() -> repository.save(libraryEvent));
+        applied(List.of(libraryEvent));
+        log.info(SampledLogFilter.SAMPLED, "event=library-event.persisted libraryEventId={} type={}", libraryEvent.getLibraryEventId(), libraryEvent.getLibraryEventType());
     }
 
-    private void validate(LibraryEvent libraryEvent) {
-        repository.findById(libraryEvent.getLibraryEventId()).ifPresentOrElse(this::save, () -> { throw new IllegalArgumentException("Not a valid Library Event");});
+    //one transaction, one lookup for all UPDATE ids and one flush per batch instead of per record.
+    //Saves up to the first invalid UPDATE and returns how many records that is, the caller decides what to do with the rest
+    private int saveAll(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        if(consumerRecords.isEmpty()) {
+            return 0;
+        }
+        if(isEventLogMode()) {
+            final List<LibraryEvent> appendedLibraryEvents = meterRegistry.timer(PERSIST_TIMER, BATCH_TAGS).record(() ->
+                    transactionTemplate.execute(status -> appendToLog(consumerRecords, true)));
+            applied(appendedLibraryEvents);
+            log.info("Successfully Persisted {} library events", appendedLibraryEvents.size());
+            return appendedLibraryEvents.size();
+        }
+        final List<LibraryEvent> libraryEvents = consumerRecords.stream()
+                .map(ConsumerRecord::value)
+                .collect(Collectors.toList());
+        if(isUpsertMode()) {
+            final List<LibraryEvent> upsertedLibraryEvents = meterRegistry.timer(PERSIST_TIMER, BATCH_TAGS).record(() ->
+                    transactionTemplate.execute(status -> libraryEvents.stream().takeWhile(this::upsertIfValid).collect(Collectors.toList())));
+            applied(upsertedLibraryEvents);
+            log.info("Successfully Persisted {} library events", upsertedLibraryEvents.size());
+            return upsertedLibraryEvents.size();
+        }
+        final List<LibraryEvent> savedLibraryEvents = transactionTemplate.execute(status -> {
+            final Set<Long> existingIds = meterRegistry.timer(VALIDATE_TIMER, BATCH_TAGS).record(() -> findExistingIds(libraryEvents));
+            final List<LibraryEvent> validLibraryEvents = libraryEvents.stream()
+                    .takeWhile(libraryEvent -> isValid(libraryEvent, existingIds))
+                    .peek(libraryEvent -> libraryEvent.getBook().setLibraryEvent(libraryEvent))
+                    .collect(Collectors.toList());
+
+            meterRegistry.timer(PERSIST_TIMER, BATCH_TAGS).record(() -> {
+                repository.saveAll(validLibraryEvents);
+                entityManager.flush();
+                entityManager.clear();
+            });
+            log.info("Successfully Persisted {} library events", validLibraryEvents.size());
+            return validLibraryEvents;
+        });
+        applied(savedLibraryEvents);
+        return savedLibraryEvents.size();
     }
 
-    public void handleRecovery(ConsumerRecord<Integer, String> consumerRecord) {
-        Integer key = consumerRecord.key();
-        String message = consumerRecord.value();
-        final ListenableFuture<SendResult<Integer, String>> listenableFuture = kafkaTemplate.sendDefault(key, message);
-        getCallbackListenableFuture(key, message, listenableFuture);
-
+    //readers of the query caches and the catalog never see uncommitted state, inside an outer transaction both wait for its commit
+    private void applied(List<LibraryEvent> libraryEvents) {
+        queryService.evict(libraryEvents);
+        final List<Book> books = libraryEvents.stream()
+                .map(LibraryEvent::getBook)
+                .collect(Collectors.toList());
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    bookCatalog.putAll(books);
+                }
+            });
+            return;
+        }
+        bookCatalog.putAll(books);
     }
 
-    private ListenableFuture<SendResult<Integer, String>> getCallbackListenableFuture(Integer key, String value, ListenableFuture<SendResult<Integer, String>> sendResultListenableFuture) {
-        sendResultListenableFuture.addCallback(new ListenableFutureCallback<>() {
-            @Override
-            public void onFailure(Throwable throwable) {
-                handleFailure(key, value, throwable);
-            }
+    private boolean isUpsertMode() {
+        return consumerProperties.getPersistenceMode() == LibraryEventsConsumerProperties.PersistenceMode.UPSERT;
+    }
 
-            @Override
-            public void onSuccess(SendResult<Integer, String> result) {
+    private boolean isEventLogMode() {
+        return consumerProperties.getPersistenceMode() == LibraryEventsConsumerProperties.PersistenceMode.EVENT_LOG;
+    }
 
-                handleSuccess(key, value, result);
+    //inserts only: each event becomes a library_event_log row, flushed in JDBC batches, and the book table gets one MERGE
+    //per distinct book with its latest state. Redeliveries are dropped by the deduplicator before they get here.
+    //An UPDATE is valid once the NEW event of its id is logged, in an earlier batch or earlier in this one.
+    private List<LibraryEvent> appendToLog(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords, boolean stopAtInvalid) {
+        final Set<Long> loggedIds = new HashSet<>(findLoggedIds(consumerRecords));
+        final Map<Integer, Long> bookVersions = findBookVersions(consumerRecords);
+        final Map<Integer, List<Long>> dueSnapshots = new LinkedHashMap<>();
+        final Map<Integer, Book> latestBooks = new LinkedHashMap<>();
+        final List<LibraryEvent> appendedLibraryEvents = new ArrayList<>(consumerRecords.size());
+        for(ConsumerRecord<Long, LibraryEvent> consumerRecord : consumerRecords) {
+            final LibraryEvent libraryEvent = consumerRecord.value();
+            if(libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE) && !loggedIds.contains(libraryEvent.getLibraryEventId())) {
+                if(!stopAtInvalid) {
+                    throw new IllegalArgumentException("Not a valid Library Event");
+                }
+                log.error("Not a valid Library Event {}, stopping the batch at it", libraryEvent);
+                break;
             }
-        });
-        return sendResultListenableFuture;
+            if(libraryEvent.getLibraryEventId() == null) {
+                libraryEvent.setLibraryEventId(repository.nextLibraryEventId());
+            }
+            loggedIds.add(libraryEvent.getLibraryEventId());
+            final Integer bookId = libraryEvent.getBook().getBookId();
+            final long bookVersion = bookVersions.merge(bookId, 1L, Long::sum);
+            entityManager.persist(toLogEntry(consumerRecord, bookVersion));
+            if(bookHistoryService.isSnapshotDue(bookVersion)) {
+                dueSnapshots.computeIfAbsent(bookId, key -> new ArrayList<>()).add(bookVersion);
+            }
+            latestBooks.put(bookId, libraryEvent.getBook());
+            appendedLibraryEvents.add(libraryEvent);
+        }
+        entityManager.flush();
+        //in version order, each snapshot replays from the one written before it; skipping one would leave the
+        //as-of lookups between it and the next with up to twice snapshot-interval rows to replay
+        dueSnapshots.forEach((bookId, snapshotVersions) -> snapshotVersions.forEach(bookVersion -> bookHistoryService.writeSnapshot(bookId, bookVersion)));
+        entityManager.flush();
+        entityManager.clear();
+        latestBooks.values().forEach(book -> bookRepository.upsertBookState(book.getBookId(), book.getBookName(), book.getBookAuthor()));
+        return appendedLibraryEvents;
     }
 
-
-    private void handleFailure(Integer key, String value, Throwable throwable) {
-        log.error("Error sending the Message and the exception is {}", throwable.getMessage());
-        try {
-            throw throwable;
-        } catch (Throwable ex) {
-            log.error("Error on Failure {}", ex.getMessage());
+    private Set<Long> findLoggedIds(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        final Set<Long> updateIds = consumerRecords.stream()
+                .map(ConsumerRecord::value)
+                .filter(libraryEvent -> libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE))
+                .map(LibraryEvent::getLibraryEventId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if(updateIds.isEmpty()) {
+            return Set.of();
         }
+        return libraryEventLogRepository.findLoggedLibraryEventIds(updateIds);
     }
 
-    private void handleSuccess(Integer key, String value, SendResult<Integer, String> result) {
-        log.info("Message Sent Successfully for the key: {} and the value is {}, partition is: {} ", key, value, result.getRecordMetadata().partition());
+    private Map<Integer, Long> findBookVersions(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        final Set<Integer> bookIds = consumerRecords.stream()
+                .map(consumerRecord -> consumerRecord.value().getBook().getBookId())
+                .collect(Collectors.toSet());
+        return libraryEventLogRepository.findBookVersions(bookIds).stream()
+                .collect(Collectors.toMap(LibraryEventLogRepository.BookVersion::getBookId, LibraryEventLogRepository.BookVersion::getBookVersion,
+                        (first, second) -> first, HashMap::new));
     }
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+    private LibraryEventLog toLogEntry(ConsumerRecord<Long, LibraryEvent> consumerRecord, long bookVersion) {
+        final LibraryEvent libraryEvent = consumerRecord.value();
+        final Book book = libraryEvent.getBook();
+        return LibraryEventLog.builder()
+                .libraryEventId(libraryEvent.getLibraryEventId())
+                .libraryEventType(libraryEvent.getLibraryEventType())
+                .bookId(book.getBookId())
+                .bookVersion(bookVersion)
+                .bookName(book.getBookName())
+                .bookAuthor(book.getBookAuthor())
+                .recordPartition(consumerRecord.partition())
+                .recordOffset(consumerRecord.offset())
+                .recordTimestamp(Instant.ofEpochMilli(consumerRecord.timestamp()))
+                .build();
+    }
 
+    //an UPDATE touching no row is the missing id case, reported as IllegalArgumentException so simpleRetryPolicy does not retry it
+    private void upsert(LibraryEvent libraryEvent) {
+        final Long libraryEventId = libraryEvent.getLibraryEventId();
+        final String libraryEventType = libraryEvent.getLibraryEventType().name();
+        if(libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE)) {
+            if(libraryEventId == null || repository.updateLibraryEvent(libraryEventId, libraryEventType) == 0) {
+                throw new IllegalArgumentException("Not a valid Library Event");
+            }
+        } else {
+            if(libraryEventId == null) {
+                libraryEvent.setLibraryEventId(repository.nextLibraryEventId());
+            }
+            repository.upsertLibraryEvent(libraryEvent.getLibraryEventId(), libraryEventType);
+        }
+        final Book book = libraryEvent.getBook();
+        repository.upsertBook(book.getBookId(), book.getBookName(), book.getBookAuthor(), libraryEvent.getLibraryEventId());
+    }
 
+    private boolean upsertIfValid(LibraryEvent libraryEvent) {
+        try {
+            upsert(libraryEvent);
+            return true;
+        } catch (IllegalArgumentException e) {
+            log.error("Not a valid Library Event {}, stopping the batch at it", libraryEvent);
+            return false;
+        }
+    }
 
+    private Set<Long> findExistingIds(List<LibraryEvent> libraryEvents) {
+        final Set<Long> updateIds = libraryEvents.stream()
+                .filter(libraryEvent -> libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE))
+                .map(LibraryEvent::getLibraryEventId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if(updateIds.isEmpty()) {
+            return Set.of();
+        }
+        return repository.findAllById(updateIds).stream()
+                .map(LibraryEvent::getLibraryEventId)
+                .collect(Collectors.toSet());
+    }
 
+    private boolean isValid(LibraryEvent libraryEvent, Set<Long> existingIds) {
+        if(libraryEvent.getLibraryEventType().equals(LibraryEventType.UPDATE) && !existingIds.contains(libraryEvent.getLibraryEventId())) {
+            log.error("Not a valid Library Event {}, stopping the batch at it", libraryEvent);
+            return false;
+        }
+        return true;
+    }
 
+    private void validate(LibraryEvent libraryEvent, Tags tags) {
+        repository.findById(libraryEvent.getLibraryEventId()).ifPresentOrElse(existing -> save(existing, tags), () -> { throw new IllegalArgumentException("Not a valid Library Event");});
+    }
 
+    //the ErrorHandlingDeserializer hands over a null value and keeps the failure, with the raw bytes, in a header
+    private DeserializationException deserializationException(ConsumerRecord<Long, LibraryEvent> consumerRecord) {
+        final DeserializationException deserializationException = ListenerUtils.getExceptionFromHeader(consumerRecord,
+                ErrorHandlingDeserializer.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        if(deserializationException != null) {
+            return deserializationException;
+        }
+        return new DeserializationException("Library event without a value", null, false, null);
+    }
 
+    //the record goes to library-events-dlt instead of back to library-events, where it would fail again in a hot loop
+    public void handleRecovery(ConsumerRecord<Long, LibraryEvent> consumerRecord, Throwable throwable, int attempts) {
+        final Throwable cause = throwable == null ? null : NestedExceptionUtils.getMostSpecificCause(throwable);
+        meterRegistry.counter("library.events.consumer.recovered",
+                "exception", cause == null ? "none" : cause.getClass().getSimpleName(),
+                "partition", String.valueOf(consumerRecord.partition())).increment();
+        deadLetterPublisher.publish(consumerRecord, throwable, attempts);
+    }
 
+    //the failures simpleRetryPolicy retries, anywhere in the cause chain, as the listeners wrap what the service throws
+    public static boolean isRecoverable(Throwable throwable) {
+        for(Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if(cause instanceof RecoverableDataAccessException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
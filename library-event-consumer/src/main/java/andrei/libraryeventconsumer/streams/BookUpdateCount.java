@@ -0,0 +1,16 @@
+package andrei.libraryeventconsumer.streams;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class BookUpdateCount {
+
+    private Integer bookId;
+    private Long updates;
+}
@@ -0,0 +1,104 @@
+package andrei.libraryeventconsumer.streams;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.KeyQueryMetadata;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.HostInfo;
+import org.apache.kafka.streams.state.QueryableStoreType;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.apache.kafka.streams.state.ReadOnlyWindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+//Interactive queries against the analytics state stores of this instance. Every lookup is a single key,
+//a key whose partition is hosted by another instance is reported through remoteHost so the caller can be sent there.
+@Service
+@ConditionalOnProperty(name = "library-events.consumer.streams.enabled", havingValue = "true")
+public class LibraryEventsAnalyticsService {
+
+    private final StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+    private final LibraryEventsConsumerProperties.Streams streams;
+    private final HostInfo thisHost;
+
+    public LibraryEventsAnalyticsService(StreamsBuilderFactoryBean streamsBuilderFactoryBean,
+                                         LibraryEventsConsumerProperties consumerProperties) {
+        this.streamsBuilderFactoryBean = streamsBuilderFactoryBean;
+        this.streams = consumerProperties.getStreams();
+        this.thisHost = streams.getApplicationServer() != null ? HostInfo.buildFromEndpoint(streams.getApplicationServer()) : null;
+    }
+
+    public long booksPerAuthor(String bookAuthor) {
+        return valueOrZero(keyValueStore(LibraryEventsAnalyticsTopology.BOOKS_PER_AUTHOR_STORE).get(bookAuthor));
+    }
+
+    public long totalCount(LibraryEventType libraryEventType) {
+        return valueOrZero(keyValueStore(LibraryEventsAnalyticsTopology.EVENT_TYPE_TOTAL_COUNTS_STORE).get(libraryEventType.name()));
+    }
+
+    public List<WindowedCount> windowedCounts(LibraryEventType libraryEventType, Duration lookback) {
+        final ReadOnlyWindowStore<String, Long> windowStore = store(LibraryEventsAnalyticsTopology.EVENT_TYPE_WINDOWED_COUNTS_STORE,
+                QueryableStoreTypes.windowStore());
+        final double windowSeconds = streams.getRateWindow().toMillis() / 1000d;
+        final Instant now = Instant.now();
+        final List<WindowedCount> windowedCounts = new ArrayList<>();
+        try (WindowStoreIterator<Long> windows = windowStore.fetch(libraryEventType.name(), now.minus(lookback), now)) {
+            windows.forEachRemaining(window -> windowedCounts.add(WindowedCount.builder()
+                    .windowStart(Instant.ofEpochMilli(window.key))
+                    .count(window.value)
+                    .ratePerSecond(window.value / windowSeconds)
+                    .build()));
+        }
+        return windowedCounts;
+    }
+
+    public MostUpdatedBooks mostUpdatedBooks() {
+        final ReadOnlyKeyValueStore<String, MostUpdatedBooks> store = store(LibraryEventsAnalyticsTopology.MOST_UPDATED_BOOKS_STORE,
+                QueryableStoreTypes.keyValueStore());
+        return Optional.ofNullable(store.get(LibraryEventsAnalyticsTopology.MOST_UPDATED_BOOKS_KEY)).orElseGet(MostUpdatedBooks::new);
+    }
+
+    //empty when the key is local or no application server is configured (single instance)
+    public Optional<HostInfo> remoteHost(String storeName, String key) {
+        if(thisHost == null) {
+            return Optional.empty();
+        }
+        final KeyQueryMetadata metadata = kafkaStreams().queryMetadataForKey(storeName, key, new StringSerializer());
+        if(metadata == null || KeyQueryMetadata.NOT_AVAILABLE.equals(metadata)) {
+            throw new InvalidStateStoreException("Store " + storeName + " is not available yet");
+        }
+        return thisHost.equals(metadata.getActiveHost()) ? Optional.empty() : Optional.of(metadata.getActiveHost());
+    }
+
+    private ReadOnlyKeyValueStore<String, Long> keyValueStore(String storeName) {
+        return store(storeName, QueryableStoreTypes.keyValueStore());
+    }
+
+    private <T> T store(String storeName, QueryableStoreType<T> storeType) {
+        return kafkaStreams().store(StoreQueryParameters.fromNameAndType(storeName, storeType));
+    }
+
+    private KafkaStreams kafkaStreams() {
+        final KafkaStreams kafkaStreams = streamsBuilderFactoryBean.getKafkaStreams();
+        if(kafkaStreams == null) {
+            throw new InvalidStateStoreException("Kafka Streams is not running");
+        }
+        return kafkaStreams;
+    }
+
+    private static long valueOrZero(Long value) {
+        return value != null ? value : 0L;
+    }
+}
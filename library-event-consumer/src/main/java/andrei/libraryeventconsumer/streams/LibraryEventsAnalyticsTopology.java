@@ -0,0 +1,107 @@
+package andrei.libraryeventconsumer.streams;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.serialization.LibraryEventDeserializer;
+import andrei.libraryeventconsumer.serialization.LibraryEventKeyDeserializer;
+import andrei.libraryeventconsumer.serialization.LibraryEventSerializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.Serde;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.Grouped;
+import org.apache.kafka.streams.kstream.KGroupedStream;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.KTable;
+import org.apache.kafka.streams.kstream.Materialized;
+import org.apache.kafka.streams.kstream.Repartitioned;
+import org.apache.kafka.streams.kstream.TimeWindows;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.WindowStore;
+import org.springframework.kafka.support.serializer.JsonSerde;
+
+import java.time.Duration;
+
+//library-events -> RocksDB backed state stores, each answering one analytics question with a key lookup:
+//books per author (current state, a book moving to another author is subtracted from the old one),
+//NEW/UPDATE counts per tumbling window and in total, and the most updated books.
+public final class LibraryEventsAnalyticsTopology {
+
+    public static final String BOOKS_PER_AUTHOR_STORE = "books-per-author";
+    public static final String EVENT_TYPE_WINDOWED_COUNTS_STORE = "event-type-windowed-counts";
+    public static final String EVENT_TYPE_TOTAL_COUNTS_STORE = "event-type-total-counts";
+    public static final String BOOK_UPDATE_COUNTS_STORE = "book-update-counts";
+    public static final String MOST_UPDATED_BOOKS_STORE = "most-updated-books";
+    //the top N is one aggregate, kept under a single key
+    public static final String MOST_UPDATED_BOOKS_KEY = "all";
+
+    private static final String TOPIC_NAME = "library-events";
+
+    private LibraryEventsAnalyticsTopology() {
+    }
+
+    public static KStream<Long, LibraryEvent> build(StreamsBuilder streamsBuilder, LibraryEventsConsumerProperties.Streams streams) {
+        final Serde<Long> keySerde = Serdes.serdeFrom(new LongSerializer(), new LibraryEventKeyDeserializer());
+        final Serde<LibraryEvent> libraryEventSerde = Serdes.serdeFrom(new LibraryEventSerializer(), new LibraryEventDeserializer());
+        final Serde<Book> bookSerde = new JsonSerde<>(Book.class).noTypeInfo();
+        final Serde<BookUpdateCount> bookUpdateCountSerde = new JsonSerde<>(BookUpdateCount.class).noTypeInfo();
+        final Serde<MostUpdatedBooks> mostUpdatedBooksSerde = new JsonSerde<>(MostUpdatedBooks.class).noTypeInfo();
+
+        final KStream<Long, LibraryEvent> libraryEvents = streamsBuilder
+                .stream(TOPIC_NAME, Consumed.with(keySerde, libraryEventSerde))
+                .filter((key, libraryEvent) -> libraryEvent != null && libraryEvent.getLibraryEventType() != null
+                        && libraryEvent.getBook() != null && libraryEvent.getBook().getBookId() != null);
+
+        //latest state of every book, then counted by its current author
+        final KTable<Integer, Book> books = libraryEvents
+                .map((key, libraryEvent) -> KeyValue.pair(libraryEvent.getBook().getBookId(), libraryEvent.getBook()))
+                .repartition(Repartitioned.with(Serdes.Integer(), bookSerde))
+                .toTable(Materialized.<Integer, Book, KeyValueStore<Bytes, byte[]>>with(Serdes.Integer(), bookSerde));
+        books.filter((bookId, book) -> book.getBookAuthor() != null)
+                .groupBy((bookId, book) -> KeyValue.pair(book.getBookAuthor(), bookId), Grouped.with(Serdes.String(), Serdes.Integer()))
+                .count(Materialized.<String, Long, KeyValueStore<Bytes, byte[]>>as(BOOKS_PER_AUTHOR_STORE)
+                        .withKeySerde(Serdes.String())
+                        .withValueSerde(Serdes.Long()));
+
+        //only the type and the book id are repartitioned, not the whole event
+        final KGroupedStream<String, Integer> eventsByType = libraryEvents
+                .map((key, libraryEvent) -> KeyValue.pair(libraryEvent.getLibraryEventType().name(), libraryEvent.getBook().getBookId()))
+                .groupByKey(Grouped.with(Serdes.String(), Serdes.Integer()));
+        eventsByType
+                .windowedBy(TimeWindows.of(streams.getRateWindow()).grace(streams.getRateWindow()))
+                .count(Materialized.<String, Long, WindowStore<Bytes, byte[]>>as(EVENT_TYPE_WINDOWED_COUNTS_STORE)
+                        .withKeySerde(Serdes.String())
+                        .withValueSerde(Serdes.Long())
+                        .withRetention(maxDuration(streams.getRateRetention(), streams.getRateWindow().multipliedBy(2))));
+        eventsByType
+                .count(Materialized.<String, Long, KeyValueStore<Bytes, byte[]>>as(EVENT_TYPE_TOTAL_COUNTS_STORE)
+                        .withKeySerde(Serdes.String())
+                        .withValueSerde(Serdes.Long()));
+
+        final KTable<Integer, Long> bookUpdateCounts = libraryEvents
+                .filter((key, libraryEvent) -> libraryEvent.getLibraryEventType() == LibraryEventType.UPDATE)
+                .map((key, libraryEvent) -> KeyValue.pair(libraryEvent.getBook().getBookId(), libraryEvent.getBook().getBookId()))
+                .groupByKey(Grouped.with(Serdes.Integer(), Serdes.Integer()))
+                .count(Materialized.<Integer, Long, KeyValueStore<Bytes, byte[]>>as(BOOK_UPDATE_COUNTS_STORE)
+                        .withKeySerde(Serdes.Integer())
+                        .withValueSerde(Serdes.Long()));
+        bookUpdateCounts.toStream()
+                .map((bookId, updates) -> KeyValue.pair(MOST_UPDATED_BOOKS_KEY, new BookUpdateCount(bookId, updates)))
+                .groupByKey(Grouped.with(Serdes.String(), bookUpdateCountSerde))
+                .aggregate(MostUpdatedBooks::new,
+                        (key, bookUpdateCount, mostUpdatedBooks) -> mostUpdatedBooks.add(bookUpdateCount, streams.getMostUpdatedLimit()),
+                        Materialized.<String, MostUpdatedBooks, KeyValueStore<Bytes, byte[]>>as(MOST_UPDATED_BOOKS_STORE)
+                                .withKeySerde(Serdes.String())
+                                .withValueSerde(mostUpdatedBooksSerde));
+        return libraryEvents;
+    }
+
+    private static Duration maxDuration(Duration first, Duration second) {
+        return first.compareTo(second) >= 0 ? first : second;
+    }
+}
@@ -0,0 +1,30 @@
+package andrei.libraryeventconsumer.streams;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+//Top N books by update count. Counts only grow, so a book that dropped out comes back in
+//as soon as its count passes the smallest one kept.
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class MostUpdatedBooks {
+
+    private List<BookUpdateCount> books = new ArrayList<>();
+
+    public MostUpdatedBooks add(BookUpdateCount bookUpdateCount, int limit) {
+        books.removeIf(book -> book.getBookId().equals(bookUpdateCount.getBookId()));
+        books.add(bookUpdateCount);
+        books.sort(Comparator.comparing(BookUpdateCount::getUpdates).reversed()
+                .thenComparing(BookUpdateCount::getBookId));
+        if(books.size() > limit) {
+            books.subList(limit, books.size()).clear();
+        }
+        return this;
+    }
+}
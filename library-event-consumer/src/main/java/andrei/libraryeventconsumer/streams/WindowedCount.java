@@ -0,0 +1,19 @@
+package andrei.libraryeventconsumer.streams;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Builder
+public class WindowedCount {
+
+    private Instant windowStart;
+    private Long count;
+    private Double ratePerSecond;
+}
@@ -0,0 +1,106 @@
+package andrei.libraryeventconsumer.benchmark;
+
+import andrei.libraryeventconsumer.LibraryEventConsumerApplication;
+import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+//Consumes the same library-events backlog in batch mode once with at-least-once and once with exactly-once delivery,
+//each run with its own consumer group and database, and reports records/s for both and the exactly-once cost.
+//Excluded from the default build, run it with mvn test -Pbenchmark [-Dbenchmark.records=200000]
+@Tag("benchmark")
+@Slf4j
+@EmbeddedKafka(topics = {"library-events"}, partitions = 3,
+        brokerProperties = {"transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+class ConsumerDeliveryBenchmarkTest {
+
+    private static final int RECORDS = Integer.getInteger("benchmark.records", 50_000);
+    private static final Duration TIMEOUT = Duration.ofMinutes(5);
+
+    private static EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @BeforeAll
+    static void setUp(EmbeddedKafkaBroker broker) {
+        embeddedKafkaBroker = broker;
+        final Map<String, Object> configs = KafkaTestUtils.producerProps(broker);
+        configs.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        try (Producer<Long, String> producer = new KafkaProducer<>(configs, new LongSerializer(), new StringSerializer())) {
+            //unique books keyed by their producer assigned id, as the producer sends NEW events; the ids start past 111,
+            //the id LibraryEventsService fails on to emulate a recoverable error
+            for(int index = 0; index < RECORDS; index++) {
+                final long libraryEventId = index + 1_000L;
+                producer.send(new ProducerRecord<>("library-events", libraryEventId, """
+                        {"libraryEventId":%d,"libraryEventType":"NEW","book":{"bookId":%d,"bookName":"Kafka using Spring Boot, volume %d","bookAuthor":"Author %d"}}
+                        """.formatted(libraryEventId, index, index, index % 97)));
+            }
+        }
+    }
+
+    @Test
+    void benchmarkDeliveryGuarantees() {
+        final List<String> report = new ArrayList<>();
+        report.add(String.format("%-16s %12s", "delivery", "records/s"));
+        final double atLeastOnce = run("at-least-once");
+        report.add(String.format("%-16s %12.0f", "at-least-once", atLeastOnce));
+        final double exactlyOnce = run("exactly-once");
+        report.add(String.format("%-16s %12.0f", "exactly-once", exactlyOnce));
+        report.add(String.format("exactly-once throughput cost: %.1f%%", 100 * (1 - exactlyOnce / atLeastOnce)));
+        log.info("Consumer delivery benchmark, {} records per run:\n{}", RECORDS, String.join("\n", report));
+    }
+
+    //timed from the first persisted row, so the context startup is not part of the result
+    private double run(String delivery) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryEventConsumerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.kafka.consumer.bootstrap-servers=" + embeddedKafkaBroker.getBrokersAsString(),
+                        "--spring.kafka.producer.bootstrap-servers=" + embeddedKafkaBroker.getBrokersAsString(),
+                        "--spring.kafka.consumer.group-id=delivery-benchmark-" + delivery,
+                        "--spring.kafka.consumer.auto-offset-reset=earliest",
+                        "--spring.datasource.url=jdbc:h2:mem:delivery-benchmark-" + delivery,
+                        "--library-events.consumer.mode=batch",
+                        "--library-events.consumer.delivery=" + delivery)) {
+            final LibraryEventsRepository repository = context.getBean(LibraryEventsRepository.class);
+            final long deadline = System.nanoTime() + TIMEOUT.toNanos();
+            while(repository.count() == 0 && System.nanoTime() < deadline) {
+                sleep();
+            }
+            final long start = System.nanoTime();
+            while(repository.count() < RECORDS && System.nanoTime() < deadline) {
+                sleep();
+            }
+            final double recordsPerSecond = RECORDS / ((System.nanoTime() - start) / 1e9);
+            assertEquals(RECORDS, repository.count(), "records persisted with " + delivery);
+            return recordsPerSecond;
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package andrei.libraryeventconsumer.catalog;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.repository.BookRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class BookCatalogTest {
+
+    @Mock
+    private BookRepository bookRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private BookCatalog bookCatalog;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        bookCatalog = catalog(false);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void find_GrowsPastTheInitialCapacity(boolean offHeap) {
+        final BookCatalog bookCatalog = catalog(offHeap);
+        for(int bookId = -5000; bookId <= 5000; bookId++) {
+            bookCatalog.put(book(bookId, "Book " + bookId, "Author " + Math.floorMod(bookId, 10)));
+        }
+
+        assertEquals(10001, bookCatalog.size());
+        assertEquals("Book 0", bookCatalog.find(0).get().getBookName());
+        assertEquals("Author 3", bookCatalog.find(-4997).get().getBookAuthor());
+        assertTrue(bookCatalog.find(5001).isEmpty());
+    }
+
+    @Test
+    void put_UpdateMovesTheBookToItsNewAuthor() {
+        bookCatalog.put(book(456, "My kafka book", "Andrei"));
+        bookCatalog.put(book(457, "Another book", "Andrei"));
+        bookCatalog.put(book(456, "My Updated Book, with a much longer name", "Updated Author"));
+
+        assertEquals("My Updated Book, with a much longer name", bookCatalog.find(456).get().getBookName());
+        assertEquals(List.of(457), bookIds(bookCatalog.findByAuthor("Andrei", PageRequest.of(0, 10))));
+        assertEquals(List.of(456), bookIds(bookCatalog.findByAuthor("Updated Author", PageRequest.of(0, 10))));
+    }
+
+    @Test
+    void findByAuthor_Paginated() {
+        for(int bookId = 1; bookId <= 25; bookId++) {
+            bookCatalog.put(book(bookId, "Book " + bookId, "Andrei"));
+        }
+
+        final Page<Book> page = bookCatalog.findByAuthor("Andrei", PageRequest.of(2, 10));
+        assertEquals(25, page.getTotalElements());
+        assertEquals(List.of(5, 4, 3, 2, 1), bookIds(page));
+        assertTrue(bookCatalog.findByAuthor("Nobody", PageRequest.of(0, 10)).isEmpty());
+    }
+
+    @Test
+    void memoryFootprint_ReportedAsAGauge() {
+        final double empty = meterRegistry.get("library.events.catalog.memory").gauge().value();
+        for(int bookId = 1; bookId <= 10_000; bookId++) {
+            bookCatalog.put(book(bookId, "Book " + bookId, "Andrei"));
+        }
+
+        assertTrue(meterRegistry.get("library.events.catalog.memory").gauge().value() > empty);
+        assertEquals(10_000, meterRegistry.get("library.events.catalog.books").gauge().value());
+    }
+
+    private BookCatalog catalog(boolean offHeap) {
+        final LibraryEventsConsumerProperties consumerProperties = new LibraryEventsConsumerProperties();
+        consumerProperties.getCatalog().setOffHeap(offHeap);
+        consumerProperties.getCatalog().setInitialCapacity(16);
+        return new BookCatalog(consumerProperties, bookRepository, new TransactionTemplate(), meterRegistry);
+    }
+
+    private static Book book(int bookId, String bookName, String bookAuthor) {
+        return Book.builder().bookId(bookId).bookName(bookName).bookAuthor(bookAuthor).build();
+    }
+
+    private static List<Integer> bookIds(Page<Book> page) {
+        return page.getContent().stream().map(Book::getBookId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,162 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.service.LibraryEventsService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KeyOrderedParallelProcessorTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("library-events", 0);
+
+    @Mock
+    private LibraryEventsService libraryEventsService;
+
+    @Mock
+    private Consumer<Long, LibraryEvent> consumer;
+
+    private KeyOrderedParallelProcessor keyOrderedParallelProcessor;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        keyOrderedParallelProcessor.destroy();
+    }
+
+    @Test
+    void dispatch_KeepsTheOrderOfEachKeyAcrossLanes() throws InterruptedException {
+        keyOrderedParallelProcessor = processor(4, 1000);
+        final Map<Long, List<Long>> processedOffsets = new ConcurrentHashMap<>();
+        final Set<String> lanes = ConcurrentHashMap.newKeySet();
+        doAnswer(invocation -> {
+            final ConsumerRecord<Long, LibraryEvent> consumerRecord = invocation.getArgument(0);
+            lanes.add(Thread.currentThread().getName());
+            Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+            processedOffsets.computeIfAbsent(consumerRecord.key(), key -> Collections.synchronizedList(new ArrayList<>())).add(consumerRecord.offset());
+            return null;
+        }).when(libraryEventsService).processLibraryEvent(any());
+
+        //20 keys interleaved over 400 offsets of one partition
+        keyOrderedParallelProcessor.dispatch(records(0, 400, offset -> offset % 20), consumer);
+        keyOrderedParallelProcessor.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0));
+
+        assertEquals(20, processedOffsets.size());
+        processedOffsets.forEach((key, offsets) -> assertEquals(offsets.stream().sorted().collect(Collectors.toList()), offsets,
+                "offsets of key " + key + " processed out of order"));
+        assertTrue(lanes.size() > 1, "everything ran on one lane");
+    }
+
+    @Test
+    void onPartitionsRevokedBeforeCommit_DrainsTheLanesThenCommits() throws InterruptedException {
+        keyOrderedParallelProcessor = processor(2, 1000);
+        final AtomicInteger processed = new AtomicInteger();
+        doAnswer(invocation -> {
+            Thread.sleep(50);
+            processed.incrementAndGet();
+            return null;
+        }).when(libraryEventsService).processLibraryEvent(any());
+
+        keyOrderedParallelProcessor.dispatch(records(0, 6, offset -> offset), consumer);
+        keyOrderedParallelProcessor.onPartitionsRevokedBeforeCommit(consumer, List.of(PARTITION_0));
+
+        assertEquals(6, processed.get());
+        verify(consumer).commitSync(Map.of(PARTITION_0, new OffsetAndMetadata(6)));
+    }
+
+    @Test
+    void dispatch_PausesInsteadOfBlockingWhenMaxInFlightIsReached() throws InterruptedException {
+        keyOrderedParallelProcessor = processor(1, 2);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(libraryEventsService).processLibraryEvent(any());
+        when(consumer.assignment()).thenReturn(Set.of(PARTITION_0));
+
+        final long start = System.nanoTime();
+        keyOrderedParallelProcessor.dispatch(records(0, 5, offset -> offset), consumer);
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 5000, "the poll thread blocked");
+        //two records in flight, the rest is fetched again from offset 2 after the resume
+        verify(consumer).seek(PARTITION_0, 2);
+        verify(consumer).pause(Set.of(PARTITION_0));
+
+        release.countDown();
+        when(consumer.paused()).thenReturn(Set.of(PARTITION_0));
+        final AtomicBoolean resumed = new AtomicBoolean();
+        doAnswer(invocation -> {
+            resumed.set(true);
+            return null;
+        }).when(consumer).resume(Set.of(PARTITION_0));
+        //the idle events keep coming while paused, the partitions are resumed by the first one after the lane caught up
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while(!resumed.get() && System.nanoTime() < deadline) {
+            keyOrderedParallelProcessor.onIdle(idleEvent());
+            Thread.sleep(10);
+        }
+
+        assertTrue(resumed.get(), "the partitions were never resumed");
+        verify(libraryEventsService, times(2)).processLibraryEvent(any());
+    }
+
+    @Test
+    void destroy_WaitsForTheQueuedRecords() throws InterruptedException {
+        keyOrderedParallelProcessor = processor(2, 1000);
+        final AtomicInteger processed = new AtomicInteger();
+        doAnswer(invocation -> {
+            Thread.sleep(100);
+            processed.incrementAndGet();
+            return null;
+        }).when(libraryEventsService).processLibraryEvent(any());
+
+        keyOrderedParallelProcessor.dispatch(records(0, 4, offset -> offset), consumer);
+        keyOrderedParallelProcessor.destroy();
+
+        assertEquals(4, processed.get());
+    }
+
+    private KeyOrderedParallelProcessor processor(int workers, int maxInFlight) {
+        final LibraryEventsConsumerProperties.Parallel parallel = new LibraryEventsConsumerProperties.Parallel();
+        parallel.setWorkers(workers);
+        parallel.setMaxInFlight(maxInFlight);
+        parallel.setAcquireTimeout(Duration.ofMillis(50));
+        return new KeyOrderedParallelProcessor(libraryEventsService, new RetryTemplate(), parallel);
+    }
+
+    private static List<ConsumerRecord<Long, LibraryEvent>> records(long fromOffset, long toOffset, LongUnaryOperator key) {
+        return LongStream.range(fromOffset, toOffset)
+                .mapToObj(offset -> new ConsumerRecord<Long, LibraryEvent>("library-events", 0, offset, key.applyAsLong(offset), null))
+                .collect(Collectors.toList());
+    }
+
+    private ListenerContainerIdleEvent idleEvent() {
+        return new ListenerContainerIdleEvent(this, this, 1000, "library-events-0", List.of(PARTITION_0), consumer, false);
+    }
+}
@@ -0,0 +1,158 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
+import andrei.libraryeventconsumer.service.LibraryEventsService;
+import lombok.SneakyThrows;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.MicrometerConsumerListener;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events"}, partitions = 1)
+@TestPropertySource(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.auto-offset-reset=earliest",
+        //the records are all on the topic before the first poll, so they arrive as one batch
+        "spring.kafka.listener.auto-startup=false",
+        "library-events.consumer.mode=batch",
+        "library-events.consumer.rebalance.mode=cooperative",
+        "library-events.consumer.rebalance.group-instance-id=library-events-batch-it"})
+class LibraryEventsBatchConsumerITTest {
+
+    @Autowired
+    private KafkaTemplate<Long, String> kafkaTemplate;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry endpointRegistry;
+
+    @Autowired
+    private LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    private ConcurrentKafkaListenerContainerFactory<?, ?> kafkaListenerContainerFactory;
+
+    @SpyBean
+    private LibraryEventsService libraryEventsServiceSpy;
+
+    //each test sends its records before the containers start, so they arrive as one batch
+    @AfterEach
+    void tearDown() {
+        endpointRegistry.stop();
+        libraryEventsRepository.deleteAll();
+    }
+
+    @Test
+    void listenerContainers_CarryTheBatchConsumerOverrides() {
+        endpointRegistry.getListenerContainers().forEach(container -> {
+            assertEquals(500, container.getContainerProperties().getKafkaConsumerProperties().get(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+            assertEquals(64 * 1024, container.getContainerProperties().getKafkaConsumerProperties().get(ConsumerConfig.FETCH_MIN_BYTES_CONFIG));
+        });
+    }
+
+    @Test
+    void listenerContainers_KeepBootsConsumerFactoryAndCarryTheRebalanceOverrides() {
+        endpointRegistry.getListenerContainers().forEach(container -> {
+            final Properties consumerProperties = container.getContainerProperties().getKafkaConsumerProperties();
+            assertEquals(CooperativeStickyAssignor.class.getName(), consumerProperties.get(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG));
+            assertEquals("library-events-batch-it", consumerProperties.get(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG));
+        });
+        assertTrue(((DefaultKafkaConsumerFactory<?, ?>) kafkaListenerContainerFactory.getConsumerFactory()).getListeners().stream()
+                .anyMatch(MicrometerConsumerListener.class::isInstance));
+    }
+
+    @SneakyThrows
+    @Test
+    void publishBatchWithFailingLibraryEvent_RecoversItAndContinuesWithTheRest() {
+        //111 emulates the recoverable DB failure, in the middle of the batch; a book belongs to one event, so one book each
+        for(long libraryEventId : List.of(1001L, 1002L, 111L, 1003L, 1004L)) {
+            kafkaTemplate.sendDefault(libraryEventId, libraryEventJson(libraryEventId, "NEW")).get();
+        }
+        endpointRegistry.start();
+
+        final long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while(libraryEventsRepository.count() < 4 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(List.of(1001L, 1002L, 1003L, 1004L), libraryEventsRepository.findAll().stream()
+                .map(LibraryEvent::getLibraryEventId).sorted().collect(Collectors.toList()));
+        //the first call got the whole batch, the retries only the failed record and what follows it
+        final ArgumentCaptor<List<ConsumerRecord<Long, LibraryEvent>>> batches = ArgumentCaptor.forClass(List.class);
+        verify(libraryEventsServiceSpy, atLeast(2)).processLibraryEvents(batches.capture());
+        assertEquals(List.of(1001L, 1002L, 111L, 1003L, 1004L), keys(batches.getAllValues().get(0)));
+        assertEquals(List.of(111L, 1003L, 1004L), keys(batches.getAllValues().get(1)));
+        //two retries after the first attempt, then dead-lettered on its own
+        final ArgumentCaptor<ConsumerRecord<Long, LibraryEvent>> recovered = ArgumentCaptor.forClass(ConsumerRecord.class);
+        verify(libraryEventsServiceSpy, times(1)).handleRecovery(recovered.capture(), isA(Throwable.class), eq(3));
+        assertEquals(111L, recovered.getValue().key());
+        assertFalse(libraryEventsRepository.existsById(111L));
+    }
+
+    @SneakyThrows
+    @Test
+    void publishBatchWithInvalidUpdate_DeadLettersItWithoutRetriesAndContinuesWithTheRest() {
+        //2002 was never created, the UPDATE is invalid as in the record mode
+        kafkaTemplate.sendDefault(2001L, libraryEventJson(2001L, "NEW")).get();
+        kafkaTemplate.sendDefault(2002L, libraryEventJson(2002L, "UPDATE")).get();
+        kafkaTemplate.sendDefault(2003L, libraryEventJson(2003L, "NEW")).get();
+        endpointRegistry.start();
+
+        final long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while(libraryEventsRepository.count() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertEquals(List.of(2001L, 2003L), libraryEventsRepository.findAll().stream()
+                .map(LibraryEvent::getLibraryEventId).sorted().collect(Collectors.toList()));
+        final ArgumentCaptor<List<ConsumerRecord<Long, LibraryEvent>>> batches = ArgumentCaptor.forClass(List.class);
+        verify(libraryEventsServiceSpy, atLeast(2)).processLibraryEvents(batches.capture());
+        assertEquals(List.of(2001L, 2002L, 2003L), keys(batches.getAllValues().get(0)));
+        assertEquals(List.of(2003L), keys(batches.getAllValues().get(1)));
+        //not retried, dead-lettered on the first attempt
+        final ArgumentCaptor<ConsumerRecord<Long, LibraryEvent>> recovered = ArgumentCaptor.forClass(ConsumerRecord.class);
+        verify(libraryEventsServiceSpy, times(1)).handleRecovery(recovered.capture(), isA(Throwable.class), eq(1));
+        assertEquals(2002L, recovered.getValue().key());
+    }
+
+    private static String libraryEventJson(long libraryEventId, String libraryEventType) {
+        return """
+                {
+                    "libraryEventId": %d,
+                    "libraryEventType": "%s",
+                    "book": {
+                        "bookId": %d,
+                        "bookName": "My kafka book",
+                        "bookAuthor": "Andrei"
+                    }
+                }
+                """.formatted(libraryEventId, libraryEventType, libraryEventId);
+    }
+
+    private static List<Long> keys(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        return consumerRecords.stream().map(ConsumerRecord::key).collect(Collectors.toList());
+    }
+}
@@ -44,7 +44,7 @@ class LibraryEventsConsumerITTest {
     private EmbeddedKafkaBroker embeddedKafkaBroker;
 
     @Autowired
-    private KafkaTemplate<Integer, String> kafkaTemplate;
+    private KafkaTemplate<Long, String> kafkaTemplate;
 
     @Autowired
     private KafkaListenerEndpointRegistry endpointRegistry;
@@ -105,6 +105,31 @@ class LibraryEventsConsumerITTest {
         });
     }
 
+    @SneakyThrows
+    @Test
+    void publishNewLibraryEvent_ProducerAssignedId() {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        String json = """
+                {
+                    "libraryEventId": 766844942799310848,
+                    "libraryEventType": "NEW",
+                    "book": {
+                        "bookId": 123,
+                        "bookName": "My kafka book",
+                        "bookAuthor": "Andrei"
+                    }
+                }
+                """;
+        kafkaTemplate.sendDefault(766844942799310848L, json).get();
+        latch.await(3, TimeUnit.SECONDS);
+
+        final List<LibraryEvent> libraryEventList = libraryEventsRepository.findAll();
+        assertEquals(1, libraryEventList.size());
+        assertEquals(766844942799310848L, libraryEventList.get(0).getLibraryEventId());
+        assertEquals(123, libraryEventList.get(0).getBook().getBookId());
+    }
+
     @SneakyThrows
     @Test
     void publishUpdateLibraryEvent() {
@@ -162,7 +187,7 @@ class LibraryEventsConsumerITTest {
                 }
                 """;
         System.out.println(json);
-        kafkaTemplate.sendDefault(123, json).get();
+        kafkaTemplate.sendDefault(123L, json).get();
         //when
         CountDownLatch latch = new CountDownLatch(1);
         latch.await(3, TimeUnit.SECONDS);
@@ -171,7 +196,7 @@ class LibraryEventsConsumerITTest {
         verify(libraryEventsConsumerSpy, atLeast(1)).onMessage(isA(ConsumerRecord.class));
         verify(libraryEventsServiceSpy, atLeast(1)).processLibraryEvent(isA(ConsumerRecord.class));
 
-        Optional<LibraryEvent> libraryEventOptional = libraryEventsRepository.findById(123);
+        Optional<LibraryEvent> libraryEventOptional = libraryEventsRepository.findById(123L);
         assertFalse(libraryEventOptional.isPresent());
     }
 
@@ -214,14 +239,15 @@ class LibraryEventsConsumerITTest {
                     }
                 }
                 """;
-        kafkaTemplate.sendDefault(111, json).get();
+        kafkaTemplate.sendDefault(111L, json).get();
         //when
         CountDownLatch latch = new CountDownLatch(1);
         latch.await(3, TimeUnit.SECONDS);
 
-        verify(libraryEventsConsumerSpy, times(4)).onMessage(isA(ConsumerRecord.class));
-        verify(libraryEventsServiceSpy, times(4)).processLibraryEvent(isA(ConsumerRecord.class));
-        verify(libraryEventsServiceSpy, times(1)).handleRecovery(isA(ConsumerRecord.class));
+        //three attempts, then dead-lettered instead of republished to library-events
+        verify(libraryEventsConsumerSpy, times(3)).onMessage(isA(ConsumerRecord.class));
+        verify(libraryEventsServiceSpy, times(3)).processLibraryEvent(isA(ConsumerRecord.class));
+        verify(libraryEventsServiceSpy, times(1)).handleRecovery(isA(ConsumerRecord.class), isA(Throwable.class), anyInt());
     }
 
 }
@@ -0,0 +1,228 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
+import andrei.libraryeventconsumer.repository.PendingDeadLetterRepository;
+import andrei.libraryeventconsumer.service.LibraryEventsDeduplicator;
+import andrei.libraryeventconsumer.service.LibraryEventsService;
+import lombok.SneakyThrows;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events", "library-events-dlt"}, partitions = 1,
+        brokerProperties = {"transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+@TestPropertySource(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "library-events.consumer.mode=batch",
+        "library-events.consumer.delivery=exactly-once"})
+class LibraryEventsExactlyOnceITTest {
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaTemplate<Long, String> kafkaTemplate;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry endpointRegistry;
+
+    @Autowired
+    private LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    private PendingDeadLetterRepository pendingDeadLetterRepository;
+
+    @SpyBean
+    private LibraryEventsService libraryEventsServiceSpy;
+
+    @SpyBean
+    private LibraryEventsDeduplicator libraryEventsDeduplicatorSpy;
+
+    @BeforeEach
+    void setUp() {
+        endpointRegistry.getAllListenerContainers()
+                .forEach(messageListenerContainer -> ContainerTestUtils.waitForAssignment(messageListenerContainer, embeddedKafkaBroker.getPartitionsPerTopic())
+                );
+    }
+
+    @SneakyThrows
+    @Test
+    void failedBatch_RollsBackTheRowsAndTheOffsetsAndIsRedelivered() {
+        //fails after the rows and the high-water mark are written, as a lost Kafka commit would
+        final AtomicBoolean failed = new AtomicBoolean();
+        doAnswer(invocation -> {
+            invocation.callRealMethod();
+            if(failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Emulated failure after the writes");
+            }
+            return null;
+        }).when(libraryEventsDeduplicatorSpy).markApplied(anyCollection());
+        //neither the rows nor the high-water mark of the failed attempt may be left, it would drop the redelivery
+        final List<List<Long>> deliveries = new ArrayList<>();
+        doAnswer(invocation -> {
+            final List<ConsumerRecord<Long, LibraryEvent>> consumerRecords = invocation.getArgument(0);
+            if(failed.get()) {
+                consumerRecords.forEach(consumerRecord -> assertFalse(libraryEventsRepository.existsById(consumerRecord.key())));
+            }
+            deliveries.add(keys(consumerRecords));
+            return invocation.callRealMethod();
+        }).when(libraryEventsServiceSpy).processLibraryEvents(anyList());
+
+        long endOffset = 0;
+        for(long libraryEventId : List.of(1001L, 1002L, 1003L)) {
+            endOffset = kafkaTemplate.sendDefault(libraryEventId, libraryEventJson(libraryEventId)).get().getRecordMetadata().offset() + 1;
+        }
+
+        final long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while(committedOffset() < endOffset && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertTrue(failed.get());
+        assertTrue(deliveries.size() >= 2, "nothing was redelivered: " + deliveries);
+        assertTrue(deliveries.get(1).containsAll(deliveries.get(0)), "redelivered " + deliveries);
+        assertEquals(endOffset, committedOffset());
+        assertTrue(List.of(1001L, 1002L, 1003L).stream().allMatch(libraryEventsRepository::existsById));
+    }
+
+    @SneakyThrows
+    @Test
+    void deadLetteredRecord_IsOnlyVisibleToReadCommittedAfterTheCommit() {
+        final AtomicInteger visibleBeforeCommit = new AtomicInteger(-1);
+        final AtomicInteger sentBeforeCommit = new AtomicInteger(-1);
+        doAnswer(invocation -> {
+            final Object result = invocation.callRealMethod();
+            //still inside the listener transaction, the DLT record is sent but not committed
+            if(keys(invocation.getArgument(0)).contains(111L)) {
+                visibleBeforeCommit.set(readDeadLetters("read_committed", 111L, Duration.ofSeconds(1)).size());
+                sentBeforeCommit.set(readDeadLetters("read_uncommitted", 111L, Duration.ofSeconds(1)).size());
+            }
+            return result;
+        }).when(libraryEventsServiceSpy).processLibraryEvents(anyList());
+
+        //111 emulates the recoverable DB failure, it is dead-lettered within the batch transaction
+        kafkaTemplate.sendDefault(111L, libraryEventJson(111L)).get();
+
+        final List<ConsumerRecord<Long, byte[]>> committedDeadLetters = readDeadLetters("read_committed", 111L, Duration.ofSeconds(30));
+        assertEquals(0, visibleBeforeCommit.get());
+        assertEquals(1, sentBeforeCommit.get());
+        assertEquals(1, committedDeadLetters.size());
+        assertEquals(111L, committedDeadLetters.get(0).key());
+    }
+
+    @SneakyThrows
+    @Test
+    void failedKafkaCommit_AfterTheJpaCommitDeadLettersTheRecordAgain() {
+        //the rows, the high-water mark and the pending dead letter are committed, then the Kafka commit fails once
+        final AtomicBoolean failed = new AtomicBoolean();
+        final List<List<Long>> deliveries = new ArrayList<>();
+        doAnswer(invocation -> {
+            final List<ConsumerRecord<Long, LibraryEvent>> consumerRecords = invocation.getArgument(0);
+            deliveries.add(keys(consumerRecords));
+            final Object result = invocation.callRealMethod();
+            if(keys(consumerRecords).contains(1301L) && failed.compareAndSet(false, true)) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void beforeCommit(boolean readOnly) {
+                        throw new IllegalStateException("Emulated Kafka commit failure");
+                    }
+                });
+            }
+            return result;
+        }).when(libraryEventsServiceSpy).processLibraryEvents(anyList());
+
+        kafkaTemplate.sendDefault(1302L, libraryEventJson(1302L)).get();
+        //unreadable, dead-lettered within the batch transaction
+        final long endOffset = kafkaTemplate.sendDefault(1301L, "not a library event").get().getRecordMetadata().offset() + 1;
+
+        final long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while(committedOffset() < endOffset && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertTrue(failed.get());
+        assertEquals(endOffset, committedOffset());
+        //the high-water mark dropped nothing but the record the rolled back attempt had applied
+        assertTrue(deliveries.stream().skip(1).anyMatch(keys -> keys.contains(1301L) && !keys.contains(1302L)), "redelivered " + deliveries);
+        assertTrue(libraryEventsRepository.existsById(1302L));
+        assertEquals(1, readDeadLetters("read_committed", 1301L, Duration.ofSeconds(5)).size());
+        assertEquals(0, pendingDeadLetterRepository.count());
+    }
+
+    private long committedOffset() throws Exception {
+        final OffsetAndMetadata offsetAndMetadata = KafkaTestUtils.getCurrentOffset(embeddedKafkaBroker.getBrokersAsString(),
+                "library-events-listener-group", "library-events", 0);
+        return offsetAndMetadata == null ? -1 : offsetAndMetadata.offset();
+    }
+
+    //returns on the first records with the key, or empty after the timeout
+    private List<ConsumerRecord<Long, byte[]>> readDeadLetters(String isolationLevel, long key, Duration timeout) {
+        final Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("library-events-dlt-" + UUID.randomUUID(), "false", embeddedKafkaBroker);
+        consumerProps.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, isolationLevel);
+        final List<ConsumerRecord<Long, byte[]>> deadLetters = new ArrayList<>();
+        try (Consumer<Long, byte[]> consumer = new KafkaConsumer<>(consumerProps, new LongDeserializer(), new ByteArrayDeserializer())) {
+            consumer.subscribe(List.of("library-events-dlt"));
+            final long deadline = System.nanoTime() + timeout.toNanos();
+            while(deadLetters.isEmpty() && System.nanoTime() < deadline) {
+                consumer.poll(Duration.ofMillis(200)).forEach(consumerRecord -> {
+                    if(consumerRecord.key() == key) {
+                        deadLetters.add(consumerRecord);
+                    }
+                });
+            }
+        }
+        return deadLetters;
+    }
+
+    private static String libraryEventJson(long libraryEventId) {
+        return """
+                {
+                    "libraryEventId": %d,
+                    "libraryEventType": "NEW",
+                    "book": {
+                        "bookId": %d,
+                        "bookName": "My kafka book",
+                        "bookAuthor": "Andrei"
+                    }
+                }
+                """.formatted(libraryEventId, libraryEventId);
+    }
+
+    private static List<Long> keys(List<ConsumerRecord<Long, LibraryEvent>> consumerRecords) {
+        return consumerRecords.stream().map(ConsumerRecord::key).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,98 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.service.LibraryEventsService;
+import lombok.SneakyThrows;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events"}, partitions = 1)
+@TestPropertySource(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.auto-offset-reset=earliest",
+        "library-events.consumer.retry.mode=topics",
+        "library-events.consumer.retry.attempts=3",
+        "library-events.consumer.retry.initial-delay=100ms",
+        "library-events.consumer.retry.multiplier=2",
+        "library-events.consumer.retry.partitions=1",
+        "library-events.consumer.retry.replication-factor=1"})
+class LibraryEventsRetryTopicsITTest {
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @Autowired
+    private KafkaTemplate<Long, String> kafkaTemplate;
+
+    @SpyBean
+    private LibraryEventsService libraryEventsServiceSpy;
+
+    @SneakyThrows
+    @Test
+    void publishFailingLibraryEvent_GoesThroughTheRetryTopicsToTheDlt() {
+        String json = """
+               {
+                    "libraryEventId": 111,
+                    "libraryEventType": "NEW",
+                    "book": {
+                        "bookId": 123,
+                        "bookName": "My kafka book",
+                        "bookAuthor": "Andrei"
+                    }
+                }
+                """;
+        kafkaTemplate.sendDefault(111L, json).get();
+
+        final ConsumerRecord<Long, byte[]> deadLetter = deadLetter();
+
+        assertEquals(111L, deadLetter.key());
+        assertEquals("library-events", new String(deadLetter.headers().lastHeader(KafkaHeaders.ORIGINAL_TOPIC).value(), StandardCharsets.UTF_8));
+        //one delivery per topic, the listener thread never blocked on a backoff
+        final ArgumentCaptor<ConsumerRecord<Long, LibraryEvent>> deliveries = ArgumentCaptor.forClass(ConsumerRecord.class);
+        verify(libraryEventsServiceSpy, times(3)).processLibraryEvent(deliveries.capture());
+        assertEquals(List.of("library-events", "library-events-retry-100", "library-events-retry-200"),
+                deliveries.getAllValues().stream().map(ConsumerRecord::topic).collect(Collectors.toList()));
+        //the retry topics own the DLT in this mode, the blocking recovery never runs
+        verify(libraryEventsServiceSpy, never()).handleRecovery(any(), any(), anyInt());
+    }
+
+    private ConsumerRecord<Long, byte[]> deadLetter() {
+        final Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("library-events-dlt-reader", "false", embeddedKafkaBroker);
+        try (Consumer<Long, byte[]> consumer = new KafkaConsumer<>(consumerProps, new LongDeserializer(), new ByteArrayDeserializer())) {
+            consumer.subscribe(List.of("library-events-dlt"));
+            final long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while(System.nanoTime() < deadline) {
+                for(ConsumerRecord<Long, byte[]> consumerRecord : consumer.poll(Duration.ofMillis(200))) {
+                    return consumerRecord;
+                }
+            }
+        }
+        return fail("Nothing was dead-lettered");
+    }
+}
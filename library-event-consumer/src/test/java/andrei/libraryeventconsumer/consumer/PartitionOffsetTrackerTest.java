@@ -0,0 +1,57 @@
+package andrei.libraryeventconsumer.consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionOffsetTrackerTest {
+
+    private PartitionOffsetTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new PartitionOffsetTracker();
+        tracker.dispatched(10);
+        tracker.dispatched(11);
+        tracker.dispatched(12);
+    }
+
+    @Test
+    void nextCommit_StopsAtTheLowestOffsetInFlight() {
+        tracker.completed(11);
+        tracker.completed(12);
+
+        assertEquals(10, tracker.nextCommit());
+    }
+
+    @Test
+    void nextCommit_MovesPastTheLastOffsetWhenEverythingCompleted() {
+        tracker.completed(12);
+        tracker.completed(10);
+        tracker.completed(11);
+
+        assertEquals(13, tracker.nextCommit());
+        assertEquals(-1, tracker.nextCommit());
+    }
+
+    @Test
+    void nextCommit_OnlyReturnsNewProgress() {
+        tracker.completed(10);
+        assertEquals(11, tracker.nextCommit());
+
+        tracker.completed(12);
+        assertEquals(-1, tracker.nextCommit());
+
+        tracker.completed(11);
+        assertEquals(13, tracker.nextCommit());
+    }
+
+    @Test
+    void awaitDrained_TimesOutWhileRecordsAreInFlight() throws InterruptedException {
+        tracker.completed(10);
+
+        assertFalse(tracker.awaitDrained(50));
+        assertEquals(2, tracker.inFlight());
+    }
+}
@@ -0,0 +1,93 @@
+package andrei.libraryeventconsumer.consumer;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.service.LibraryEventsDeduplicator;
+import andrei.libraryeventconsumer.service.LibraryEventsQueryService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PartitionWarmUpListenerTest {
+
+    private static final TopicPartition PARTITION_1 = new TopicPartition("library-events", 1);
+
+    @Mock
+    private LibraryEventsDeduplicator libraryEventsDeduplicator;
+
+    @Mock
+    private LibraryEventsQueryService queryService;
+
+    @Mock
+    private ConsumerAwareRebalanceListener delegate;
+
+    @Mock
+    private Consumer<?, ?> consumer;
+
+    private PartitionWarmUpListener partitionWarmUpListener;
+
+    @BeforeEach
+    void setUp() {
+        partitionWarmUpListener = new PartitionWarmUpListener(libraryEventsDeduplicator, queryService,
+                new LibraryEventsConsumerProperties.Rebalance(), delegate);
+    }
+
+    @Test
+    void onPartitionsAssigned_WarmsUpTheBooksOfTheNewPartitions() {
+        mockPartitions();
+
+        partitionWarmUpListener.onPartitionsAssigned(consumer, List.of(PARTITION_1));
+
+        verify(delegate).onPartitionsAssigned(consumer, List.of(PARTITION_1));
+        verify(libraryEventsDeduplicator).warmUp(List.of(PARTITION_1));
+        final ArgumentCaptor<IntPredicate> bookFilter = ArgumentCaptor.forClass(IntPredicate.class);
+        verify(queryService).warmUpBooks(bookFilter.capture(), eq(1000));
+        final List<Integer> bookIds = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+        assertEquals(bookIds.stream().filter(bookId -> PartitionWarmUpListener.partitionOf(bookId, 3) == 1).collect(Collectors.toList()),
+                bookIds.stream().filter(bookFilter.getValue()::test).collect(Collectors.toList()));
+    }
+
+    @Test
+    void onPartitionsAssigned_NothingNewIsNoOp() {
+        partitionWarmUpListener.onPartitionsAssigned(consumer, List.of());
+
+        verifyNoInteractions(libraryEventsDeduplicator, queryService);
+    }
+
+    @Test
+    void onPartitionsRevokedAfterCommit_DropsTheirState() {
+        mockPartitions();
+
+        partitionWarmUpListener.onPartitionsRevokedAfterCommit(consumer, List.of(PARTITION_1));
+
+        verify(delegate).onPartitionsRevokedAfterCommit(consumer, List.of(PARTITION_1));
+        verify(libraryEventsDeduplicator).forget(List.of(PARTITION_1));
+        verify(queryService).evictBooks(any());
+        verify(queryService, never()).warmUpBooks(any(), anyInt());
+    }
+
+    private void mockPartitions() {
+        doReturn(IntStream.range(0, 3)
+                .mapToObj(partition -> new PartitionInfo("library-events", partition, null, null, null))
+                .collect(Collectors.toList()))
+                .when(consumer).partitionsFor("library-events");
+    }
+}
@@ -0,0 +1,46 @@
+package andrei.libraryeventconsumer.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SampledLogFilterTest {
+
+    private final LoggerContext loggerContext = new LoggerContext();
+    private SampledLogFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        filter = new SampledLogFilter();
+        filter.setSampleRate(2);
+        filter.addCategory("andrei.libraryeventconsumer.service=10");
+    }
+
+    @Test
+    void decide_SamplesMarkedLinesPerCategory() {
+        assertEquals(10, accepted(loggerContext.getLogger("andrei.libraryeventconsumer.service.LibraryEventsService"), Level.INFO, 100));
+        assertEquals(50, accepted(loggerContext.getLogger("andrei.libraryeventconsumer.consumer.LibraryEventsConsumer"), Level.INFO, 100));
+    }
+
+    @Test
+    void decide_FailuresAndUnmarkedLinesAreNeverSampled() {
+        final Logger logger = loggerContext.getLogger("andrei.libraryeventconsumer.service.LibraryEventsService");
+        assertEquals(100, accepted(logger, Level.WARN, 100));
+        assertEquals(100, accepted(logger, Level.ERROR, 100));
+        assertEquals(FilterReply.NEUTRAL, filter.decide(null, logger, Level.INFO, "event=record.received", null, null));
+    }
+
+    private long accepted(Logger logger, Level level, int lines) {
+        return IntStream.range(0, lines)
+                .mapToObj(line -> filter.decide(SampledLogFilter.SAMPLED, logger, level, "event=library-event.persisted", null, null))
+                .filter(FilterReply.NEUTRAL::equals)
+                .count();
+    }
+}
@@ -0,0 +1,133 @@
+package andrei.libraryeventconsumer.serialization;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryEventDeserializerTest {
+
+    private static final String TOPIC_NAME = "library-events";
+
+    //v2 plus a Book field with a default, as a newer producer would write it
+    private static final String SCHEMA_V3 = """
+            {
+              "type": "record", "name": "LibraryEvent", "namespace": "com.andrei.library.avro",
+              "fields": [
+                {"name": "libraryEventId", "type": ["null", "long"], "default": null},
+                {"name": "libraryEventType", "type": ["null", {"type": "enum", "name": "LibraryEventType", "symbols": ["NEW", "UPDATE"]}], "default": null},
+                {"name": "book", "type": {"type": "record", "name": "Book", "fields": [
+                  {"name": "bookId", "type": "int"},
+                  {"name": "bookName", "type": "string"},
+                  {"name": "bookAuthor", "type": "string"},
+                  {"name": "bookIsbn", "type": "string", "default": ""}
+                ]}}
+              ]
+            }
+            """;
+
+    private final LibraryEventDeserializer deserializer = new LibraryEventDeserializer();
+    private final LibraryEventSchemaRegistry schemaRegistry = LibraryEventSchemaRegistry.fromClasspath();
+
+    @Test
+    void deserialize_JsonWithoutFormatHeader() {
+        final String json = """
+                {"libraryEventId":123,"libraryEventType":"UPDATE","book":{"bookId":456,"bookName":"Kafka","bookAuthor":"Andrei"},"unknownField":true}
+                """;
+
+        final LibraryEvent libraryEvent = deserializer.deserialize(TOPIC_NAME, new RecordHeaders(), json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(123L, libraryEvent.getLibraryEventId());
+        assertEquals(LibraryEventType.UPDATE, libraryEvent.getLibraryEventType());
+        assertEquals("Kafka", libraryEvent.getBook().getBookName());
+    }
+
+    @Test
+    void deserialize_Avro() throws IOException {
+        final Schema schema = schemaRegistry.schema(1);
+        final Headers headers = new RecordHeaders();
+        LibraryEventHeaders.setAvroFormat(headers, 1);
+
+        final LibraryEvent libraryEvent = deserializer.deserialize(TOPIC_NAME, headers, encode(schema, createRecord(schema)));
+
+        assertNull(libraryEvent.getLibraryEventId());
+        assertEquals(LibraryEventType.NEW, libraryEvent.getLibraryEventType());
+        assertEquals(456, libraryEvent.getBook().getBookId());
+        assertEquals("Kafka", libraryEvent.getBook().getBookName());
+        assertEquals("Andrei", libraryEvent.getBook().getBookAuthor());
+    }
+
+    @Test
+    void deserialize_AvroUnknownSchemaVersion() throws IOException {
+        final Schema schema = schemaRegistry.schema(1);
+        final Headers headers = new RecordHeaders();
+        LibraryEventHeaders.setAvroFormat(headers, 99);
+
+        assertThrows(SerializationException.class, () -> deserializer.deserialize(TOPIC_NAME, headers, encode(schema, createRecord(schema))));
+    }
+
+    @Test
+    void decode_OlderAndNewerWriterSchema() throws IOException {
+        final Schema schemaV1 = schemaRegistry.schema(1);
+        final Schema schemaV2 = schemaRegistry.schema(2);
+        final Schema schemaV3 = new Schema.Parser().parse(SCHEMA_V3);
+        final LibraryEventAvroCodec avroCodec = new LibraryEventAvroCodec(new LibraryEventSchemaRegistry(Map.of(1, schemaV1, 2, schemaV2, 3, schemaV3)));
+
+        final GenericRecord recordV3 = createRecord(schemaV3);
+        ((GenericRecord) recordV3.get("book")).put("bookIsbn", "978-0");
+
+        assertEquals("Kafka", avroCodec.decode(encode(schemaV1, createRecord(schemaV1)), 1).getBook().getBookName());
+        assertEquals("Kafka", avroCodec.decode(encode(schemaV2, createRecord(schemaV2)), 2).getBook().getBookName());
+        assertEquals("Kafka", avroCodec.decode(encode(schemaV3, recordV3), 3).getBook().getBookName());
+    }
+
+    @Test
+    void decode_IntLibraryEventIdOfV1IsWidened() throws IOException {
+        final Schema schemaV1 = schemaRegistry.schema(1);
+        final GenericRecord recordV1 = createRecord(schemaV1);
+        recordV1.put("libraryEventId", 123);
+
+        final LibraryEvent libraryEvent = new LibraryEventAvroCodec(schemaRegistry).decode(encode(schemaV1, recordV1), 1);
+
+        assertEquals(123L, libraryEvent.getLibraryEventId());
+    }
+
+    private GenericRecord createRecord(Schema schema) {
+        final Schema bookSchema = schema.getField("book").schema();
+        final GenericRecord book = new GenericData.Record(bookSchema);
+        book.put("bookId", 456);
+        book.put("bookName", "Kafka");
+        book.put("bookAuthor", "Andrei");
+        if(bookSchema.getField("bookIsbn") != null) {
+            book.put("bookIsbn", "");
+        }
+
+        final GenericRecord libraryEvent = new GenericData.Record(schema);
+        libraryEvent.put("libraryEventType", new GenericData.EnumSymbol(schema.getField("libraryEventType").schema().getTypes().get(1), "NEW"));
+        libraryEvent.put("book", book);
+        return libraryEvent;
+    }
+
+    private byte[] encode(Schema schema, GenericRecord record) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(outputStream, null);
+        new GenericDatumWriter<GenericRecord>(schema).write(record, encoder);
+        encoder.flush();
+        return outputStream.toByteArray();
+    }
+}
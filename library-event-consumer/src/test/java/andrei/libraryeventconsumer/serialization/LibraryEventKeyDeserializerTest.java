@@ -0,0 +1,32 @@
+package andrei.libraryeventconsumer.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryEventKeyDeserializerTest {
+
+    private static final String TOPIC_NAME = "library-events";
+
+    private final LibraryEventKeyDeserializer deserializer = new LibraryEventKeyDeserializer();
+
+    @Test
+    void deserialize_LongKey() {
+        assertEquals(766844942799310848L, deserializer.deserialize(TOPIC_NAME, new LongSerializer().serialize(TOPIC_NAME, 766844942799310848L)));
+    }
+
+    @Test
+    void deserialize_IntKeyWrittenBeforeTheLongIds() {
+        assertEquals(123L, deserializer.deserialize(TOPIC_NAME, new IntegerSerializer().serialize(TOPIC_NAME, 123)));
+        assertEquals(-1L, deserializer.deserialize(TOPIC_NAME, new IntegerSerializer().serialize(TOPIC_NAME, -1)));
+    }
+
+    @Test
+    void deserialize_NullAndInvalidKey() {
+        assertNull(deserializer.deserialize(TOPIC_NAME, null));
+        assertThrows(SerializationException.class, () -> deserializer.deserialize(TOPIC_NAME, new byte[3]));
+    }
+}
@@ -0,0 +1,153 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.serialization.LibraryEventHeaders;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.kafka.listener.ListenerExecutionFailedException;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@EmbeddedKafka(topics = {"library-events-dlt"}, partitions = 1)
+class LibraryEventsDeadLetterPublisherITTest {
+
+    private static EmbeddedKafkaBroker embeddedKafkaBroker;
+    private static LibraryEventsDeadLetterPublisher deadLetterPublisher;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeAll
+    static void setUp(EmbeddedKafkaBroker broker) {
+        embeddedKafkaBroker = broker;
+        final KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(List.of(broker.getBrokersAsString()));
+        deadLetterPublisher = new LibraryEventsDeadLetterPublisher(kafkaProperties, new ObjectMapper(), new LibraryEventsConsumerProperties());
+    }
+
+    @AfterAll
+    static void tearDown() {
+        deadLetterPublisher.destroy();
+    }
+
+    @Test
+    void publish_AddsTheFailureMetadata() throws Exception {
+        final LibraryEvent libraryEvent = createLibraryEvent(1L);
+        final ConsumerRecord<Long, LibraryEvent> consumerRecord = createRecord(1L, libraryEvent, new RecordHeaders());
+
+        deadLetterPublisher.publish(consumerRecord, new ListenerExecutionFailedException("Listener failed",
+                new RecoverableDataAccessException("Temporary network issue")), 3).get();
+
+        final ConsumerRecord<Long, byte[]> deadLettered = deadLettered(1L);
+        final Headers headers = deadLettered.headers();
+        assertEquals("library-events", header(headers, KafkaHeaders.DLT_ORIGINAL_TOPIC));
+        assertEquals(2, ByteBuffer.wrap(headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_PARTITION).value()).getInt());
+        assertEquals(42L, ByteBuffer.wrap(headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET).value()).getLong());
+        assertEquals(RecoverableDataAccessException.class.getName(), header(headers, KafkaHeaders.DLT_EXCEPTION_FQCN));
+        assertEquals("Temporary network issue", header(headers, KafkaHeaders.DLT_EXCEPTION_MESSAGE));
+        assertEquals(3, attempts(headers));
+        //the typed value is written back as JSON
+        assertEquals(LibraryEventHeaders.JSON, LibraryEventHeaders.format(headers));
+        assertEquals(libraryEvent.getBook().getBookName(), objectMapper.readValue(deadLettered.value(), LibraryEvent.class).getBook().getBookName());
+    }
+
+    @Test
+    void publish_RedrivenRecordAddsToItsAttempts() throws Exception {
+        final Headers redriveHeaders = new RecordHeaders();
+        redriveHeaders.add(LibraryEventsDeadLetterPublisher.ATTEMPTS_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(3).array());
+
+        deadLetterPublisher.publish(createRecord(2L, createLibraryEvent(2L), redriveHeaders),
+                new RecoverableDataAccessException("Temporary network issue"), 3).get();
+
+        final Headers headers = deadLettered(2L).headers();
+        assertEquals(6, attempts(headers));
+        //replaced, not appended next to the old count
+        assertEquals(1, countHeaders(headers, LibraryEventsDeadLetterPublisher.ATTEMPTS_HEADER));
+    }
+
+    @Test
+    void publish_UndeserializableRecordKeepsItsOriginalBytes() throws Exception {
+        final byte[] data = "{\"libraryEventId\": \"not a number\"}".getBytes(StandardCharsets.UTF_8);
+
+        deadLetterPublisher.publish(createRecord(3L, null, new RecordHeaders()),
+                new DeserializationException("failed to deserialize", data, false, new IllegalArgumentException("not a number")), 1).get();
+
+        final ConsumerRecord<Long, byte[]> deadLettered = deadLettered(3L);
+        assertArrayEquals(data, deadLettered.value());
+        //the most specific cause is the one recorded
+        assertEquals(IllegalArgumentException.class.getName(), header(deadLettered.headers(), KafkaHeaders.DLT_EXCEPTION_FQCN));
+        assertEquals(1, attempts(deadLettered.headers()));
+    }
+
+    private ConsumerRecord<Long, byte[]> deadLettered(long key) {
+        final Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("dlt-" + UUID.randomUUID(), "false", embeddedKafkaBroker);
+        try (Consumer<Long, byte[]> consumer = new KafkaConsumer<>(consumerProps, new LongDeserializer(), new ByteArrayDeserializer())) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, LibraryEventsDeadLetterPublisher.DLT_TOPIC);
+            final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while(System.nanoTime() < deadline) {
+                for(ConsumerRecord<Long, byte[]> consumerRecord : consumer.poll(Duration.ofMillis(200))) {
+                    if(consumerRecord.key() == key) {
+                        return consumerRecord;
+                    }
+                }
+            }
+        }
+        return fail("No dead-lettered record for the key " + key);
+    }
+
+    private static ConsumerRecord<Long, LibraryEvent> createRecord(long key, LibraryEvent libraryEvent, Headers headers) {
+        return new ConsumerRecord<>("library-events", 2, 42, 1000L, TimestampType.CREATE_TIME, (long) ConsumerRecord.NULL_CHECKSUM,
+                -1, -1, key, libraryEvent, headers);
+    }
+
+    private static LibraryEvent createLibraryEvent(long libraryEventId) {
+        return LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(LibraryEventType.NEW)
+                .book(Book.builder().bookId(456).bookName("Kafka Using Spring Boot").bookAuthor("Andrei").build())
+                .build();
+    }
+
+    private static String header(Headers headers, String key) {
+        return new String(headers.lastHeader(key).value(), StandardCharsets.UTF_8);
+    }
+
+    private static int attempts(Headers headers) {
+        return ByteBuffer.wrap(headers.lastHeader(LibraryEventsDeadLetterPublisher.ATTEMPTS_HEADER).value()).getInt();
+    }
+
+    private static int countHeaders(Headers headers, String key) {
+        int count = 0;
+        for(Header ignored : headers.headers(key)) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,214 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.RedrivenDeadLetter;
+import andrei.libraryeventconsumer.repository.RedrivenDeadLetterRepository;
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterRedriver.RedriveJob;
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterRedriver.RedriveRequest;
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterRedriver.RedriveStatus;
+import andrei.libraryeventconsumer.service.LibraryEventsDeadLetterRedriver.RedriveSummary;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+//the redrive group commits its progress on the DLT, so the tests run in order on the same five dead-lettered records
+@EmbeddedKafka(topics = "library-events-dlt", partitions = 1)
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class LibraryEventsDeadLetterRedriverITTest {
+
+    private static final String RECOVERABLE = "org.springframework.dao.RecoverableDataAccessException";
+    private static final String INVALID = "java.lang.IllegalArgumentException";
+    private static final int ORIGINAL_PARTITION = 2;
+
+    private static EmbeddedKafkaBroker embeddedKafkaBroker;
+    private static LibraryEventsDeadLetterPublisher deadLetterPublisher;
+    private static LibraryEventsDeadLetterRedriver deadLetterRedriver;
+    private static final Map<String, RedrivenDeadLetter> redrivenDeadLetters = new ConcurrentHashMap<>();
+
+    @BeforeAll
+    static void setUp(EmbeddedKafkaBroker broker) {
+        embeddedKafkaBroker = broker;
+        //more partitions than keys, so the default partitioner would not put every record on the original one
+        broker.addTopics(new NewTopic("library-events", 3, (short) 1));
+        final KafkaProperties kafkaProperties = new KafkaProperties();
+        kafkaProperties.setBootstrapServers(List.of(broker.getBrokersAsString()));
+        //a send to a partition that does not exist fails fast
+        kafkaProperties.getProducer().getProperties().put(ProducerConfig.MAX_BLOCK_MS_CONFIG, "1000");
+        final LibraryEventsConsumerProperties consumerProperties = new LibraryEventsConsumerProperties();
+        deadLetterPublisher = new LibraryEventsDeadLetterPublisher(kafkaProperties, new ObjectMapper(), consumerProperties);
+        deadLetterRedriver = new LibraryEventsDeadLetterRedriver(kafkaProperties, deadLetterPublisher, consumerProperties, inMemoryRepository());
+
+        try (Producer<Long, byte[]> producer = new KafkaProducer<>(KafkaTestUtils.producerProps(broker), new LongSerializer(), new ByteArraySerializer())) {
+            for(long key = 1; key <= 5; key++) {
+                producer.send(deadLetter(key, key == 4 ? INVALID : RECOVERABLE, ORIGINAL_PARTITION));
+            }
+        }
+    }
+
+    private static ProducerRecord<Long, byte[]> deadLetter(long key, String exceptionClass, int originalPartition) {
+        final Headers headers = new RecordHeaders();
+        headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, "library-events".getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(originalPartition).array());
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, exceptionClass.getBytes(StandardCharsets.UTF_8));
+        headers.add(LibraryEventsDeadLetterPublisher.ATTEMPTS_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(3).array());
+        return new ProducerRecord<>(LibraryEventsDeadLetterPublisher.DLT_TOPIC, null, null, key,
+                ("{\"libraryEventId\":" + key + "}").getBytes(StandardCharsets.UTF_8), headers);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedrivenDeadLetterRepository inMemoryRepository() {
+        final RedrivenDeadLetterRepository repository = mock(RedrivenDeadLetterRepository.class);
+        when(repository.findAllById(anyIterable())).thenAnswer(invocation -> StreamSupport.stream(((Iterable<String>) invocation.getArgument(0)).spliterator(), false)
+                .filter(redrivenDeadLetters::containsKey)
+                .map(redrivenDeadLetters::get)
+                .collect(Collectors.toList()));
+        when(repository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            ((Iterable<RedrivenDeadLetter>) invocation.getArgument(0)).forEach(redrivenDeadLetter -> redrivenDeadLetters.put(redrivenDeadLetter.getRecordId(), redrivenDeadLetter));
+            return List.of();
+        });
+        when(repository.deleteCommitted(anyString(), anyLong())).thenAnswer(invocation -> {
+            final int before = redrivenDeadLetters.size();
+            redrivenDeadLetters.values().removeIf(redrivenDeadLetter -> redrivenDeadLetter.getTopicPartition().equals(invocation.getArgument(0))
+                    && redrivenDeadLetter.getRecordOffset() < (long) invocation.getArgument(1));
+            return before - redrivenDeadLetters.size();
+        });
+        return repository;
+    }
+
+    @AfterAll
+    static void tearDown() {
+        deadLetterRedriver.destroy();
+        deadLetterPublisher.destroy();
+    }
+
+    @Test
+    @Order(1)
+    void redrive_ExceptionFilterSendsOnlyMatchingRecordsAndCommitsNothing() {
+        final RedriveSummary summary = deadLetterRedriver.redrive(RedriveRequest.builder().exceptionClass(INVALID).build());
+
+        assertEquals(1, summary.getRedriven());
+        assertEquals(4, summary.getSkipped());
+        assertEquals(0, summary.getFailed());
+        assertTrue(redrivenDeadLetters.containsKey("library-events-dlt-0@3"));
+    }
+
+    @Test
+    @Order(2)
+    void submit_RateLimitedUpToMaxRecordsThenResumesWhereItStopped() throws InterruptedException {
+        final long start = System.nanoTime();
+        final RedriveSummary firstSummary = await(deadLetterRedriver.submit(RedriveRequest.builder().maxRecords(3).ratePerSecond(10).build()));
+        final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertEquals(3, firstSummary.getRedriven());
+        assertEquals(Map.of(0, 3L), firstSummary.getNextOffsets());
+        //three sends at 10 per second are at least two intervals apart
+        assertTrue(elapsed.toMillis() >= 200, "redrive took " + elapsed);
+
+        //picks up after the first three records and skips the one the filtered call already sent back
+        final RedriveSummary secondSummary = await(deadLetterRedriver.submit(RedriveRequest.builder().build()));
+        assertEquals(1, secondSummary.getRedriven());
+        assertEquals(1, secondSummary.getSkipped());
+        assertEquals(Map.of(0, 5L), secondSummary.getNextOffsets());
+        //committed past it, so it is no longer remembered
+        assertTrue(redrivenDeadLetters.isEmpty());
+    }
+
+    @Test
+    @Order(3)
+    void redrive_SendsEachRecordOnceToItsOriginalPartitionWithoutTheDltMetadata() {
+        final List<ConsumerRecord<Long, byte[]>> redriven = redriven(5);
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), redriven.stream().map(ConsumerRecord::key).sorted().collect(Collectors.toList()));
+        for(ConsumerRecord<Long, byte[]> consumerRecord : redriven) {
+            assertEquals(ORIGINAL_PARTITION, consumerRecord.partition());
+            assertNull(consumerRecord.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC));
+            assertNull(consumerRecord.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_FQCN));
+            assertEquals(3, ByteBuffer.wrap(consumerRecord.headers().lastHeader(LibraryEventsDeadLetterPublisher.ATTEMPTS_HEADER).value()).getInt());
+        }
+    }
+
+    @Test
+    @Order(4)
+    void redrive_FailedSendIsReportedAndNotCommitted() throws Exception {
+        try (Producer<Long, byte[]> producer = new KafkaProducer<>(KafkaTestUtils.producerProps(embeddedKafkaBroker), new LongSerializer(), new ByteArraySerializer())) {
+            producer.send(deadLetter(6, RECOVERABLE, 7)).get();
+        }
+
+        final RedriveSummary summary = deadLetterRedriver.redrive(RedriveRequest.builder().build());
+
+        assertEquals(0, summary.getRedriven());
+        assertEquals(1, summary.getFailed());
+        assertNotNull(summary.getFailure());
+        assertTrue(summary.getNextOffsets().isEmpty());
+        //the next call tries it again
+        assertEquals(1, deadLetterRedriver.redrive(RedriveRequest.builder().build()).getFailed());
+    }
+
+    private static RedriveSummary await(RedriveJob job) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while(System.nanoTime() < deadline) {
+            final RedriveJob current = deadLetterRedriver.findJob(job.getId()).orElseThrow();
+            assertNotEquals(RedriveStatus.FAILED, current.getStatus(), current.getError());
+            if(current.getStatus() == RedriveStatus.COMPLETED) {
+                return current.getSummary();
+            }
+            Thread.sleep(50);
+        }
+        return fail("Redrive " + job.getId() + " did not complete");
+    }
+
+    private static List<ConsumerRecord<Long, byte[]>> redriven(int expected) {
+        final List<ConsumerRecord<Long, byte[]>> redriven = new ArrayList<>();
+        final Map<String, Object> consumerProps = KafkaTestUtils.consumerProps("redriven-" + UUID.randomUUID(), "false", embeddedKafkaBroker);
+        try (Consumer<Long, byte[]> consumer = new KafkaConsumer<>(consumerProps, new LongDeserializer(), new ByteArrayDeserializer())) {
+            embeddedKafkaBroker.consumeFromAnEmbeddedTopic(consumer, "library-events");
+            final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while(redriven.size() < expected && System.nanoTime() < deadline) {
+                consumer.poll(Duration.ofMillis(200)).forEach(redriven::add);
+            }
+        }
+        assertEquals(expected, redriven.size());
+        return redriven;
+    }
+}
@@ -0,0 +1,135 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.entity.PartitionHighWaterMark;
+import andrei.libraryeventconsumer.repository.PartitionHighWaterMarkRepository;
+import andrei.libraryeventconsumer.repository.PendingDeadLetterRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LibraryEventsDeduplicatorTest {
+
+    @Mock
+    private PartitionHighWaterMarkRepository highWaterMarkRepository;
+    @Mock
+    private PendingDeadLetterRepository pendingDeadLetterRepository;
+
+    private LibraryEventsDeduplicator deduplicator;
+
+    @BeforeEach
+    void setUp() {
+        deduplicator = new LibraryEventsDeduplicator(new LibraryEventsConsumerProperties(), highWaterMarkRepository, pendingDeadLetterRepository);
+    }
+
+    @Test
+    void filter_RedeliveredOffset() {
+        final ConsumerRecord<Long, LibraryEvent> consumerRecord = createRecord(5, 123L, "A");
+        assertFalse(deduplicator.filter(consumerRecord));
+
+        deduplicator.markApplied(consumerRecord);
+
+        assertTrue(deduplicator.filter(consumerRecord));
+        verifyNoInteractions(highWaterMarkRepository);
+    }
+
+    @Test
+    void filter_SamePayloadRetriedByTheProducer() {
+        deduplicator.markApplied(createRecord(5, 123L, "A"));
+
+        assertTrue(deduplicator.filter(createRecord(6, 123L, "A")));
+        assertFalse(deduplicator.filter(createRecord(6, 123L, "B")));
+    }
+
+    @Test
+    void filter_RevertedPayloadIsStillApplied() {
+        deduplicator.markApplied(List.of(createRecord(5, 123L, "A"), createRecord(6, 123L, "B")));
+
+        assertFalse(deduplicator.filter(createRecord(7, 123L, "A")));
+    }
+
+    @Test
+    void filter_ForgottenPartitionStartsOver() {
+        deduplicator.markApplied(createRecord(5, null, "A"));
+        deduplicator.forget(List.of(new TopicPartition("library-events", 0)));
+
+        assertFalse(deduplicator.filter(createRecord(5, null, "C")));
+    }
+
+    @Test
+    void filter_NewEventStillDuplicateOnceItsIdIsAssigned() {
+        final ConsumerRecord<Long, LibraryEvent> consumerRecord = createRecord(5, null, "A");
+        consumerRecord.value().setLibraryEventId(1L);
+        deduplicator.markApplied(consumerRecord);
+
+        assertTrue(deduplicator.filter(createRecord(6, null, "A")));
+    }
+
+    @Test
+    void filter_UndeserializableRecordsAreNotFingerprinted() {
+        deduplicator.markApplied(new ConsumerRecord<>("library-events", 0, 5, 123L, null));
+        deduplicator.markApplied(new ConsumerRecord<>("library-events", 0, 6, null, null));
+
+        //another unreadable record of the same key, or without one, still reaches the error handler
+        assertFalse(deduplicator.filter(new ConsumerRecord<>("library-events", 0, 7, 123L, null)));
+        assertFalse(deduplicator.filter(new ConsumerRecord<>("library-events", 0, 8, null, null)));
+        assertFalse(deduplicator.filter(createRecord(9, null, "A")));
+    }
+
+    @Test
+    void filter_ExactlyOnceRedeliversARecordWhoseDeadLetterIsPending() {
+        final LibraryEventsConsumerProperties consumerProperties = new LibraryEventsConsumerProperties();
+        consumerProperties.setDelivery(LibraryEventsConsumerProperties.Delivery.EXACTLY_ONCE);
+        final LibraryEventsDeduplicator exactlyOnceDeduplicator = new LibraryEventsDeduplicator(consumerProperties, highWaterMarkRepository, pendingDeadLetterRepository);
+        when(highWaterMarkRepository.findById("library-events-0"))
+                .thenReturn(Optional.of(PartitionHighWaterMark.builder().topicPartition("library-events-0").appliedOffset(7L).build()));
+        when(pendingDeadLetterRepository.existsById("library-events-0@6")).thenReturn(true);
+
+        assertFalse(exactlyOnceDeduplicator.filter(createRecord(6, 123L, "A")));
+        assertTrue(exactlyOnceDeduplicator.filter(createRecord(7, 124L, "B")));
+    }
+
+    @Test
+    void warmUp_LoadsThePersistedHighWaterMarksOfAssignedPartitions() {
+        final LibraryEventsConsumerProperties consumerProperties = new LibraryEventsConsumerProperties();
+        consumerProperties.getIdempotency().setPersistentHighWaterMark(true);
+        final LibraryEventsDeduplicator persistentDeduplicator = new LibraryEventsDeduplicator(consumerProperties, highWaterMarkRepository, pendingDeadLetterRepository);
+        when(highWaterMarkRepository.findAllById(Set.of("library-events-0", "library-events-1")))
+                .thenReturn(List.of(PartitionHighWaterMark.builder().topicPartition("library-events-0").appliedOffset(7L).build()));
+
+        persistentDeduplicator.warmUp(List.of(new TopicPartition("library-events", 0), new TopicPartition("library-events", 1)));
+
+        assertTrue(persistentDeduplicator.filter(createRecord(7, 123L, "A")));
+        assertFalse(persistentDeduplicator.filter(createRecord(8, 123L, "A")));
+        //partition 1 has no mark yet, it is not looked up again record by record
+        assertFalse(persistentDeduplicator.filter(new ConsumerRecord<>("library-events", 1, 0, 123L, createRecord(0, 123L, "A").value())));
+        verify(highWaterMarkRepository, never()).findById(any());
+    }
+
+    private ConsumerRecord<Long, LibraryEvent> createRecord(long offset, Long key, String bookName) {
+        final LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventType(key == null ? LibraryEventType.NEW : LibraryEventType.UPDATE)
+                .book(Book.builder().bookId(456).bookName(bookName).bookAuthor("Andrei").build())
+                .build();
+        return new ConsumerRecord<>("library-events", 0, offset, key, libraryEvent);
+    }
+}
@@ -0,0 +1,92 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.repository.BookRepository;
+import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events"}, partitions = 3)
+@TestPropertySource(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:querydb"})
+class LibraryEventsQueryServiceITTest {
+
+    @Autowired
+    private LibraryEventsService libraryEventsService;
+
+    @Autowired
+    private LibraryEventsQueryService queryService;
+
+    @Autowired
+    private LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @SpyBean
+    private BookRepository bookRepository;
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+        cacheManager.getCacheNames().forEach(cacheName -> cacheManager.getCache(cacheName).clear());
+    }
+
+    @Test
+    void findBook_ServedFromTheCacheUntilTheNextSave() {
+        libraryEventsService.processLibraryEvent(createRecord(0, null, LibraryEventType.NEW, "My kafka book"));
+
+        assertEquals("My kafka book", queryService.findBook(456).get().getBookName());
+        assertEquals("My kafka book", queryService.findBook(456).get().getBookName());
+        verify(bookRepository, times(1)).findById(456);
+
+        final Long libraryEventId = libraryEventsRepository.findAll().get(0).getLibraryEventId();
+        libraryEventsService.processLibraryEvent(createRecord(1, libraryEventId, LibraryEventType.UPDATE, "My Updated Book"));
+
+        assertEquals("My Updated Book", queryService.findBook(456).get().getBookName());
+        verify(bookRepository, times(2)).findById(456);
+    }
+
+    @Test
+    void findBooksByAuthor_Paginated() {
+        libraryEventsService.processLibraryEvent(createRecord(0, null, LibraryEventType.NEW, "My kafka book"));
+
+        final Page<Book> books = queryService.findBooksByAuthor("Andrei", PageRequest.of(0, 10));
+        assertEquals(1, books.getTotalElements());
+        assertEquals(456, books.getContent().get(0).getBookId());
+        queryService.findBooksByAuthor("Andrei", PageRequest.of(0, 10));
+        verify(bookRepository, times(1)).findByBookAuthor(eq("Andrei"), any());
+
+        final Page<LibraryEvent> libraryEvents = queryService.findLibraryEventsByBook(456, PageRequest.of(0, 10));
+        assertEquals(1, libraryEvents.getTotalElements());
+        assertTrue(queryService.findBook(999).isEmpty());
+    }
+
+    private ConsumerRecord<Long, LibraryEvent> createRecord(long offset, Long key, LibraryEventType libraryEventType, String bookName) {
+        final LibraryEvent libraryEvent = LibraryEvent.builder()
+                .libraryEventId(key)
+                .libraryEventType(libraryEventType)
+                .book(Book.builder().bookId(456).bookName(bookName).bookAuthor("Andrei").build())
+                .build();
+        return new ConsumerRecord<>("library-events", 0, offset, key, libraryEvent);
+    }
+}
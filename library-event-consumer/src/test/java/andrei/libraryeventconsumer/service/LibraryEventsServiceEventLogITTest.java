@@ -0,0 +1,181 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.BookSnapshot;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventLog;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.repository.BookRepository;
+import andrei.libraryeventconsumer.repository.BookSnapshotRepository;
+import andrei.libraryeventconsumer.repository.LibraryEventLogRepository;
+import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
+import andrei.libraryeventconsumer.serialization.LibraryEventDeserializer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events"}, partitions = 3)
+@TestPropertySource(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:eventlogdb",
+        "library-events.consumer.persistence-mode=event-log",
+        "library-events.consumer.event-log.snapshot-interval=3",
+        "library-events.consumer.event-log.book-affinity-partitioning=true"})
+class LibraryEventsServiceEventLogITTest {
+
+    private static final String JSON = """
+            {
+                "libraryEventId": %d,
+                "libraryEventType": "%s",
+                "book": {
+                    "bookId": %d,
+                    "bookName": "%s",
+                    "bookAuthor": "Andrei"
+                }
+            }
+            """;
+    private static final long TIMESTAMP = Instant.parse("2021-09-01T10:00:00Z").toEpochMilli();
+
+    @Autowired
+    private LibraryEventsService libraryEventsService;
+
+    @Autowired
+    private LibraryEventLogRepository libraryEventLogRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    private BookSnapshotRepository bookSnapshotRepository;
+
+    @Autowired
+    private BookHistoryService bookHistoryService;
+
+    @AfterEach
+    void tearDown() {
+        bookSnapshotRepository.deleteAll();
+        libraryEventLogRepository.deleteAll();
+        bookRepository.deleteAll();
+    }
+
+    @Test
+    void appendNewAndUpdateLibraryEvent() {
+        libraryEventsService.processLibraryEvent(createRecord(0, 766844942799310848L, "NEW", 456, "My kafka book"));
+        libraryEventsService.processLibraryEvent(createRecord(1, 766844942799310848L, "UPDATE", 456, "My Updated Book"));
+
+        final List<LibraryEventLog> history = libraryEventLogRepository.findByBookIdOrderByBookVersion(456);
+        assertEquals(List.of(LibraryEventType.NEW, LibraryEventType.UPDATE),
+                history.stream().map(LibraryEventLog::getLibraryEventType).collect(Collectors.toList()));
+        assertEquals("My kafka book", history.get(0).getBookName());
+        assertEquals(1L, history.get(1).getRecordOffset());
+
+        final Book book = bookRepository.findById(456).get();
+        assertEquals("My Updated Book", book.getBookName());
+        //the log replaces the library_event rows
+        assertEquals(0, libraryEventsRepository.count());
+    }
+
+    @Test
+    void appendBatch_StopsAtAnUpdateWithoutANewEvent() {
+        final BatchListenerFailedException exception = assertThrows(BatchListenerFailedException.class, () -> libraryEventsService.processLibraryEvents(List.of(
+                createRecord(0, 766844942799310849L, "NEW", 457, "My kafka book"),
+                createRecord(1, 789L, "UPDATE", 789, "Unknown Book"),
+                createRecord(2, 766844942799310849L, "UPDATE", 457, "My Updated Book"))));
+
+        //what came before it is appended, the error handler dead-letters it and redelivers the rest
+        assertEquals(1, exception.getIndex());
+        assertEquals(1, libraryEventLogRepository.findByBookIdOrderByBookVersion(457).size());
+        assertEquals("My kafka book", bookRepository.findById(457).get().getBookName());
+        assertTrue(libraryEventLogRepository.findByBookIdOrderByBookVersion(789).isEmpty());
+        assertTrue(bookRepository.findById(789).isEmpty());
+    }
+
+    @Test
+    void appendUpdateLibraryEvent_Not_A_Valid_LibraryEventId() {
+        assertThrows(IllegalArgumentException.class,
+                () -> libraryEventsService.processLibraryEvent(createRecord(0, 789L, "UPDATE", 789, "My kafka book")));
+        assertTrue(libraryEventLogRepository.findByBookIdOrderByBookVersion(789).isEmpty());
+    }
+
+    @Test
+    void findBookAsOf_ReplaysFromTheLatestSnapshot() {
+        libraryEventsService.processLibraryEvent(createRecord(10, 766844942799310850L, "NEW", 458, "Version 1"));
+        for(int version = 2; version <= 7; version++) {
+            libraryEventsService.processLibraryEvent(createRecord(8 + version * 2, 766844942799310850L, "UPDATE", 458, "Version " + version));
+        }
+
+        assertEquals(List.of(3L, 6L), bookSnapshotRepository.findAll().stream()
+                .map(BookSnapshot::getBookVersion)
+                .sorted()
+                .collect(Collectors.toList()));
+
+        //version 5 is at offset 18, one event past the version 3 snapshot
+        final BookSnapshot asOfOffset = bookHistoryService.findBookAsOfOffset(458, 19).get();
+        assertEquals(5L, asOfOffset.getBookVersion());
+        assertEquals("Version 5", asOfOffset.getBookName());
+        assertEquals(4L, asOfOffset.getUpdateCount());
+
+        final BookSnapshot asOfTimestamp = bookHistoryService.findBookAsOfTimestamp(458, Instant.ofEpochMilli(TIMESTAMP + 22_000)).get();
+        assertEquals(7L, asOfTimestamp.getBookVersion());
+        assertEquals("Version 7", asOfTimestamp.getBookName());
+        assertEquals(6L, asOfTimestamp.getUpdateCount());
+
+        assertTrue(bookHistoryService.findBookAsOfOffset(458, 9).isEmpty());
+    }
+
+    @Test
+    void appendBatch_WritesEveryDueSnapshot() {
+        final List<ConsumerRecord<Long, LibraryEvent>> consumerRecords = new ArrayList<>();
+        consumerRecords.add(createRecord(30, 766844942799310851L, "NEW", 459, "Version 1"));
+        for(int version = 2; version <= 7; version++) {
+            consumerRecords.add(createRecord(29 + version, 766844942799310851L, "UPDATE", 459, "Version " + version));
+        }
+
+        libraryEventsService.processLibraryEvents(consumerRecords);
+
+        final List<BookSnapshot> snapshots = bookSnapshotRepository.findAll().stream()
+                .sorted(Comparator.comparing(BookSnapshot::getBookVersion))
+                .collect(Collectors.toList());
+        assertEquals(List.of(3L, 6L), snapshots.stream().map(BookSnapshot::getBookVersion).collect(Collectors.toList()));
+        assertEquals("Version 3", snapshots.get(0).getBookName());
+        assertEquals(5L, snapshots.get(1).getUpdateCount());
+    }
+
+    @Test
+    void findBookAsOfOffset_RejectedWithoutBookAffinityPartitioning() {
+        final BookHistoryService keyPartitionedHistory = new BookHistoryService(libraryEventLogRepository, bookSnapshotRepository,
+                new LibraryEventsConsumerProperties());
+
+        final ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> keyPartitionedHistory.findBookAsOfOffset(458, 19));
+        assertEquals(HttpStatus.CONFLICT, exception.getStatus());
+    }
+
+    private ConsumerRecord<Long, LibraryEvent> createRecord(long offset, Long key, String libraryEventType, int bookId, String bookName) {
+        final String json = JSON.formatted(key, libraryEventType, bookId, bookName);
+        final LibraryEvent libraryEvent = new LibraryEventDeserializer().deserialize("library-events", json.getBytes(StandardCharsets.UTF_8));
+        return new ConsumerRecord<>("library-events", 0, offset, TIMESTAMP + offset * 1000, TimestampType.CREATE_TIME,
+                (long) ConsumerRecord.NULL_CHECKSUM, -1, -1, key, libraryEvent);
+    }
+}
@@ -0,0 +1,108 @@
+package andrei.libraryeventconsumer.service;
+
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.repository.LibraryEventsRepository;
+import andrei.libraryeventconsumer.serialization.LibraryEventDeserializer;
+import lombok.SneakyThrows;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@EmbeddedKafka(topics = {"library-events"}, partitions = 3)
+@TestPropertySource(properties = {"spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.datasource.url=jdbc:h2:mem:upsertdb",
+        "library-events.consumer.persistence-mode=upsert"})
+class LibraryEventsServiceUpsertITTest {
+
+    @Autowired
+    private LibraryEventsService libraryEventsService;
+
+    @Autowired
+    private LibraryEventsRepository libraryEventsRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @AfterEach
+    void tearDown() {
+        libraryEventsRepository.deleteAll();
+    }
+
+    @SneakyThrows
+    @Test
+    void upsertNewAndUpdateLibraryEvent() {
+        String json = """
+                {
+                    "libraryEventId": null,
+                    "libraryEventType": "NEW",
+                    "book": {
+                        "bookId": 456,
+                        "bookName": "My kafka book",
+                        "bookAuthor": "Andrei"
+                    }
+                }
+                """;
+        libraryEventsService.processLibraryEvent(createRecord(0, null, json));
+
+        final List<LibraryEvent> libraryEventList = libraryEventsRepository.findAll();
+        assertEquals(1, libraryEventList.size());
+        final Long libraryEventId = libraryEventList.get(0).getLibraryEventId();
+        assertNotNull(libraryEventId);
+
+        String updatedJson = """
+                {
+                    "libraryEventId": %d,
+                    "libraryEventType": "UPDATE",
+                    "book": {
+                        "bookId": 456,
+                        "bookName": "My Updated Book",
+                        "bookAuthor": "Updated Author"
+                    }
+                }
+                """.formatted(libraryEventId);
+        libraryEventsService.processLibraryEvent(createRecord(1, libraryEventId, updatedJson));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            final LibraryEvent persistedLibraryEvent = libraryEventsRepository.findById(libraryEventId).get();
+            assertEquals(LibraryEventType.UPDATE, persistedLibraryEvent.getLibraryEventType());
+            assertEquals("My Updated Book", persistedLibraryEvent.getBook().getBookName());
+            assertEquals("Updated Author", persistedLibraryEvent.getBook().getBookAuthor());
+        });
+    }
+
+    @Test
+    void upsertUpdateLibraryEvent_Not_A_Valid_LibraryEventId() {
+        String json = """
+                {
+                    "libraryEventId": 789,
+                    "libraryEventType": "UPDATE",
+                    "book": {
+                        "bookId": 789,
+                        "bookName": "My kafka book",
+                        "bookAuthor": "Andrei"
+                    }
+                }
+                """;
+        assertThrows(IllegalArgumentException.class,
+                () -> libraryEventsService.processLibraryEvent(createRecord(0, 789L, json)));
+        assertTrue(libraryEventsRepository.findById(789L).isEmpty());
+    }
+
+    private ConsumerRecord<Long, LibraryEvent> createRecord(long offset, Long key, String json) {
+        final LibraryEvent libraryEvent = new LibraryEventDeserializer().deserialize("library-events", json.getBytes(StandardCharsets.UTF_8));
+        return new ConsumerRecord<>("library-events", 0, offset, key, libraryEvent);
+    }
+}
@@ -0,0 +1,106 @@
+package andrei.libraryeventconsumer.streams;
+
+import andrei.libraryeventconsumer.config.LibraryEventsConsumerProperties;
+import andrei.libraryeventconsumer.entity.Book;
+import andrei.libraryeventconsumer.entity.LibraryEvent;
+import andrei.libraryeventconsumer.entity.LibraryEventType;
+import andrei.libraryeventconsumer.serialization.LibraryEventSerializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TestInputTopic;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.apache.kafka.streams.state.WindowStore;
+import org.apache.kafka.streams.state.WindowStoreIterator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryEventsAnalyticsTopologyTest {
+
+    private static final Instant START = Instant.parse("2021-10-01T10:00:00Z");
+
+    private TopologyTestDriver testDriver;
+    private TestInputTopic<Long, LibraryEvent> libraryEvents;
+
+    @BeforeEach
+    void setUp() {
+        final LibraryEventsConsumerProperties.Streams streams = new LibraryEventsConsumerProperties.Streams();
+        streams.setMostUpdatedLimit(2);
+        final StreamsBuilder streamsBuilder = new StreamsBuilder();
+        LibraryEventsAnalyticsTopology.build(streamsBuilder, streams);
+
+        final Properties properties = new Properties();
+        properties.put(StreamsConfig.APPLICATION_ID_CONFIG, "library-events-analytics-test");
+        properties.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "dummy:1234");
+        testDriver = new TopologyTestDriver(streamsBuilder.build(), properties);
+        libraryEvents = testDriver.createInputTopic("library-events", new LongSerializer(), new LibraryEventSerializer(),
+                START, Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        testDriver.close();
+    }
+
+    @Test
+    void booksPerAuthor_FollowsTheCurrentAuthor() {
+        libraryEvents.pipeInput(null, libraryEvent(null, LibraryEventType.NEW, 1, "Andrei"));
+        libraryEvents.pipeInput(null, libraryEvent(null, LibraryEventType.NEW, 2, "Andrei"));
+        libraryEvents.pipeInput(10L, libraryEvent(10L, LibraryEventType.UPDATE, 2, "Updated Author"));
+
+        final KeyValueStore<String, Long> booksPerAuthor = testDriver.getKeyValueStore(LibraryEventsAnalyticsTopology.BOOKS_PER_AUTHOR_STORE);
+        assertEquals(1L, booksPerAuthor.get("Andrei"));
+        assertEquals(1L, booksPerAuthor.get("Updated Author"));
+    }
+
+    @Test
+    void eventTypeCounts_TotalAndPerWindow() {
+        libraryEvents.pipeInput(null, libraryEvent(null, LibraryEventType.NEW, 1, "Andrei"));
+        libraryEvents.pipeInput(10L, libraryEvent(10L, LibraryEventType.UPDATE, 1, "Andrei"));
+        libraryEvents.pipeInput(10L, libraryEvent(10L, LibraryEventType.UPDATE, 1, "Andrei"), START.plus(Duration.ofMinutes(2)));
+
+        final KeyValueStore<String, Long> totals = testDriver.getKeyValueStore(LibraryEventsAnalyticsTopology.EVENT_TYPE_TOTAL_COUNTS_STORE);
+        assertEquals(1L, totals.get("NEW"));
+        assertEquals(2L, totals.get("UPDATE"));
+
+        final WindowStore<String, Long> windowedCounts = testDriver.getWindowStore(LibraryEventsAnalyticsTopology.EVENT_TYPE_WINDOWED_COUNTS_STORE);
+        try (WindowStoreIterator<Long> windows = windowedCounts.fetch("UPDATE", START, START.plus(Duration.ofMinutes(3)))) {
+            assertEquals(1L, windows.next().value);
+            assertEquals(1L, windows.next().value);
+            assertFalse(windows.hasNext());
+        }
+    }
+
+    @Test
+    void mostUpdatedBooks_KeepsTheTopN() {
+        for(int bookId = 1; bookId <= 3; bookId++) {
+            for(int update = 0; update < bookId; update++) {
+                libraryEvents.pipeInput((long) bookId, libraryEvent((long) bookId, LibraryEventType.UPDATE, bookId, "Andrei"));
+            }
+        }
+
+        final KeyValueStore<String, MostUpdatedBooks> mostUpdated = testDriver.getKeyValueStore(LibraryEventsAnalyticsTopology.MOST_UPDATED_BOOKS_STORE);
+        final List<Integer> bookIds = mostUpdated.get(LibraryEventsAnalyticsTopology.MOST_UPDATED_BOOKS_KEY).getBooks().stream()
+                .map(BookUpdateCount::getBookId)
+                .collect(Collectors.toList());
+        assertEquals(List.of(3, 2), bookIds);
+    }
+
+    private static LibraryEvent libraryEvent(Long libraryEventId, LibraryEventType libraryEventType, int bookId, String bookAuthor) {
+        return LibraryEvent.builder()
+                .libraryEventId(libraryEventId)
+                .libraryEventType(libraryEventType)
+                .book(Book.builder().bookId(bookId).bookName("Book " + bookId).bookAuthor(bookAuthor).build())
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+package com.andrei.libraryeventloadtest;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//One of the Spring Boot applications started from its jar as a local process, output goes to a log file next to the report
+class ApplicationProcess implements AutoCloseable {
+
+    private final String name;
+    private final int port;
+    private final Process process;
+    private final Path logFile;
+
+    private ApplicationProcess(String name, int port, Process process, Path logFile) {
+        this.name = name;
+        this.port = port;
+        this.process = process;
+        this.logFile = logFile;
+    }
+
+    static ApplicationProcess start(String name, Path jar, Path logDirectory, List<String> arguments) throws IOException {
+        if(!Files.isRegularFile(jar)) {
+            throw new IllegalStateException("The " + name + " jar " + jar.toAbsolutePath() + " does not exist, package the application modules first");
+        }
+        final int port = freePort();
+        final List<String> command = new ArrayList<>(List.of(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-jar", jar.toAbsolutePath().toString(), "--server.port=" + port));
+        command.addAll(arguments);
+        final Path logFile = logDirectory.resolve(name + ".log");
+        final Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(logFile.toFile())
+                .start();
+        return new ApplicationProcess(name, port, process, logFile);
+    }
+
+    //any HTTP answer, even a 404, means the web server and so the whole context is up
+    void awaitStarted(Duration timeout) throws InterruptedException {
+        final HttpClient httpClient = HttpClient.newHttpClient();
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        while(System.nanoTime() < deadline) {
+            if(!process.isAlive()) {
+                throw new IllegalStateException(name + " exited with " + process.exitValue() + ", see " + logFile);
+            }
+            try {
+                httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/")).build(), HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (IOException e) {
+                Thread.sleep(500);
+            }
+        }
+        throw new IllegalStateException(name + " did not start within " + timeout + ", see " + logFile);
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if(!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+}
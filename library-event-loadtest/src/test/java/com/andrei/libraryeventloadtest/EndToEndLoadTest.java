@@ -0,0 +1,140 @@
+package com.andrei.libraryeventloadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Starts an embedded Kafka, then the consumer and the producer jars as local processes, drives the producer at a fixed
+//open-loop rate and measures from the intended send time of each POST until its book row is in the consumer database.
+//Measuring from the intended time, not the actual one, keeps a stalled producer from hiding its own queueing delay.
+//mvn -Ploadtest verify [-Dloadtest.rps=500 -Dloadtest.duration-seconds=120 -Dloadtest.slo.p99-ms=500]
+@Tag("loadtest")
+@Slf4j
+class EndToEndLoadTest {
+
+    private static final String TOPIC_NAME = "library-events";
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    @Test
+    void postToRowPersisted() throws Exception {
+        final LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        final Path workDirectory = Files.createDirectories(Path.of("target", "loadtest"));
+        final Path database = workDirectory.resolve("library-events-" + System.currentTimeMillis()).toAbsolutePath();
+        final String jdbcUrl = "jdbc:h2:file:" + database + ";AUTO_SERVER=TRUE";
+        final PostmanRequestTemplate requestTemplate = PostmanRequestTemplate.load(settings.postmanCollection(), settings.requestPath());
+
+        //three brokers, as both applications create their topics with a replication factor of 3
+        final EmbeddedKafkaBroker embeddedKafkaBroker = new EmbeddedKafkaBroker(3, false, 3, TOPIC_NAME);
+        embeddedKafkaBroker.afterPropertiesSet();
+        final String brokers = embeddedKafkaBroker.getBrokersAsString();
+
+        final Histogram latencyMicros = new Histogram(TimeUnit.MINUTES.toMicros(10), 3);
+        final AtomicInteger persisted = new AtomicInteger();
+        final AtomicInteger httpErrors = new AtomicInteger();
+        final AtomicLong lastPersistedNanos = new AtomicLong();
+        final long measuredFromNanos;
+        final int lost;
+        try (ApplicationProcess consumer = ApplicationProcess.start("consumer", settings.consumerJar(), workDirectory, List.of(
+                "--spring.kafka.consumer.bootstrap-servers=" + brokers,
+                "--spring.kafka.producer.bootstrap-servers=" + brokers,
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password="));
+             ApplicationProcess producer = ApplicationProcess.start("producer", settings.producerJar(), workDirectory, List.of(
+                "--spring.kafka.producer.bootstrap-servers=" + brokers,
+                "--spring.kafka.admin.properties.bootstrap.servers=" + brokers))) {
+            consumer.awaitStarted(STARTUP_TIMEOUT);
+            producer.awaitStarted(STARTUP_TIMEOUT);
+
+            try (PersistedBookProbe probe = new PersistedBookProbe(jdbcUrl)) {
+                final HttpClient httpClient = HttpClient.newBuilder()
+                        .executor(Executors.newFixedThreadPool(8))
+                        .build();
+                final URI uri = URI.create("http://localhost:" + producer.getPort() + settings.requestPath());
+                final int totalRequests = settings.totalRequests();
+                final int warmupRequests = settings.warmupRequests();
+                final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / settings.requestsPerSecond();
+                final long startNanos = System.nanoTime();
+                measuredFromNanos = startNanos + warmupRequests * intervalNanos;
+
+                int nextBookId = 1;
+                long nextPollNanos = startNanos;
+                while(nextBookId <= totalRequests || (probe.pendingCount() > 0
+                        && System.nanoTime() < startNanos + totalRequests * intervalNanos + settings.drainTimeout().toNanos())) {
+                    final long now = System.nanoTime();
+                    if(nextBookId <= totalRequests && now >= startNanos + (nextBookId - 1) * intervalNanos) {
+                        //open loop, the request goes out on schedule whether or not earlier ones were answered
+                        final int bookId = nextBookId++;
+                        probe.sent(bookId, startNanos + (bookId - 1) * intervalNanos);
+                        httpClient.sendAsync(HttpRequest.newBuilder(uri)
+                                        .header("Content-Type", "application/json")
+                                        .POST(HttpRequest.BodyPublishers.ofString(requestTemplate.body(bookId)))
+                                        .build(), HttpResponse.BodyHandlers.discarding())
+                                .whenComplete((response, exception) -> {
+                                    if(exception != null || response.statusCode() >= 300) {
+                                        httpErrors.incrementAndGet();
+                                        probe.failed(bookId);
+                                    }
+                                });
+                        continue;
+                    }
+                    if(now >= nextPollNanos) {
+                        probe.poll((bookId, latencyNanos) -> {
+                            if(bookId > warmupRequests) {
+                                latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), latencyMicros.getHighestTrackableValue()));
+                                persisted.incrementAndGet();
+                                lastPersistedNanos.set(System.nanoTime());
+                            }
+                        });
+                        nextPollNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+                    }
+                    LockSupport.parkNanos(Math.min(intervalNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+                }
+                lost = probe.pendingCount();
+            }
+        } finally {
+            embeddedKafkaBroker.destroy();
+        }
+
+        final double seconds = (lastPersistedNanos.get() - measuredFromNanos) / 1e9;
+        final double throughput = seconds > 0 ? persisted.get() / seconds : 0;
+        final double p50 = latencyMicros.getValueAtPercentile(50) / 1000.0;
+        final double p99 = latencyMicros.getValueAtPercentile(99) / 1000.0;
+        final double p999 = latencyMicros.getValueAtPercentile(99.9) / 1000.0;
+        log.info("End to end, {} rps target: persisted {} ({} lost, {} http errors), {} rows/s sustained, p50 {} ms, p99 {} ms, p99.9 {} ms, max {} ms",
+                settings.requestsPerSecond(), persisted.get(), lost, httpErrors.get(), String.format("%.1f", throughput),
+                p50, p99, p999, latencyMicros.getMaxValue() / 1000.0);
+        try (PrintStream histogramOutput = new PrintStream(workDirectory.resolve("e2e-latency.hgrm").toFile())) {
+            latencyMicros.outputPercentileDistribution(histogramOutput, 1000.0);
+        }
+
+        assertAll("end to end SLO",
+                () -> assertEquals(0, httpErrors.get(), "requests rejected by the producer"),
+                () -> assertEquals(0, lost, "requests never persisted within the drain timeout"),
+                () -> assertTrue(p99 <= settings.sloP99Millis(), "p99 " + p99 + " ms over the SLO of " + settings.sloP99Millis() + " ms"),
+                () -> assertTrue(p999 <= settings.sloP999Millis(), "p99.9 " + p999 + " ms over the SLO of " + settings.sloP999Millis() + " ms"),
+                () -> assertTrue(throughput >= settings.requestsPerSecond() * settings.sloMinThroughputRatio(),
+                        "sustained " + throughput + " rows/s below " + settings.sloMinThroughputRatio() + " of the " + settings.requestsPerSecond() + " rps target"));
+    }
+}
@@ -0,0 +1,33 @@
+package com.andrei.libraryeventloadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+//Every knob of the harness, read from -Dloadtest.* so a CI job can pin the SLO next to the rate it was measured at
+record LoadTestSettings(int requestsPerSecond, Duration duration, Duration warmup, Duration drainTimeout,
+                        String requestPath, Path postmanCollection, Path producerJar, Path consumerJar,
+                        double sloP99Millis, double sloP999Millis, double sloMinThroughputRatio) {
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                Integer.getInteger("loadtest.rps", 200),
+                Duration.ofSeconds(Long.getLong("loadtest.duration-seconds", 60)),
+                Duration.ofSeconds(Long.getLong("loadtest.warmup-seconds", 10)),
+                Duration.ofSeconds(Long.getLong("loadtest.drain-timeout-seconds", 30)),
+                System.getProperty("loadtest.request", "/v1/library-event-with-topic-and-header"),
+                Path.of(System.getProperty("loadtest.postman-collection", "../LibraryMicroservices.postman_collection.json")),
+                Path.of(System.getProperty("loadtest.producer-jar", "../library-event-producer/target/library-event-producer-0.0.1-SNAPSHOT.jar")),
+                Path.of(System.getProperty("loadtest.consumer-jar", "../library-event-consumer/target/library-event-consumer-0.0.1-SNAPSHOT.jar")),
+                Double.parseDouble(System.getProperty("loadtest.slo.p99-ms", "1000")),
+                Double.parseDouble(System.getProperty("loadtest.slo.p999-ms", "3000")),
+                Double.parseDouble(System.getProperty("loadtest.slo.min-throughput-ratio", "0.95")));
+    }
+
+    int totalRequests() {
+        return (int) (requestsPerSecond * (warmup.toSeconds() + duration.toSeconds()));
+    }
+
+    int warmupRequests() {
+        return (int) (requestsPerSecond * warmup.toSeconds());
+    }
+}
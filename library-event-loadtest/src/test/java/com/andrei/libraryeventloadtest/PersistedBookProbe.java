@@ -0,0 +1,61 @@
+package com.andrei.libraryeventloadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+//Polls the consumer database for the book rows of the requests still in flight. The consumer opens the H2 file with
+//AUTO_SERVER=TRUE, so this second process connects through the TCP server H2 starts for it.
+class PersistedBookProbe implements AutoCloseable {
+
+    private final Connection connection;
+    private final PreparedStatement query;
+    //bookId -> intended send time in nanos
+    private final ConcurrentSkipListMap<Integer, Long> pending = new ConcurrentSkipListMap<>();
+
+    PersistedBookProbe(String jdbcUrl) throws SQLException {
+        this.connection = DriverManager.getConnection(jdbcUrl, "sa", "");
+        this.query = connection.prepareStatement("SELECT book_id FROM book WHERE book_id >= ?");
+    }
+
+    void sent(int bookId, long intendedSendNanos) {
+        pending.put(bookId, intendedSendNanos);
+    }
+
+    void failed(int bookId) {
+        pending.remove(bookId);
+    }
+
+    int pendingCount() {
+        return pending.size();
+    }
+
+    //one query from the lowest pending bookId, every pending id found is reported with the time it was seen
+    void poll(BiConsumer<Integer, Long> persisted) throws SQLException {
+        final Map.Entry<Integer, Long> lowestPending = pending.firstEntry();
+        if(lowestPending == null) {
+            return;
+        }
+        query.setInt(1, lowestPending.getKey());
+        try (ResultSet resultSet = query.executeQuery()) {
+            final long seenNanos = System.nanoTime();
+            while(resultSet.next()) {
+                final int bookId = resultSet.getInt(1);
+                final Long intendedSendNanos = pending.remove(bookId);
+                if(intendedSendNanos != null) {
+                    persisted.accept(bookId, seenNanos - intendedSendNanos);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        connection.close();
+    }
+}
@@ -0,0 +1,44 @@
+package com.andrei.libraryeventloadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+//The body of a POST from LibraryMicroservices.postman_collection.json, with a unique bookId per request so the
+//consumer row of every single request can be found
+class PostmanRequestTemplate {
+
+    private final ObjectMapper objectMapper;
+    private final ObjectNode body;
+
+    private PostmanRequestTemplate(ObjectMapper objectMapper, ObjectNode body) {
+        this.objectMapper = objectMapper;
+        this.body = body;
+    }
+
+    //only POSTs, an UPDATE needs a libraryEventId that does not exist in the fresh database of a run
+    static PostmanRequestTemplate load(Path collection, String path) throws IOException {
+        final ObjectMapper objectMapper = new ObjectMapper();
+        for(JsonNode item : objectMapper.readTree(collection.toFile()).path("item")) {
+            final JsonNode request = item.path("request");
+            final String itemPath = StreamSupport.stream(request.path("url").path("path").spliterator(), false)
+                    .map(JsonNode::asText)
+                    .collect(Collectors.joining("/", "/", ""));
+            if("POST".equals(request.path("method").asText()) && path.equals(itemPath)) {
+                return new PostmanRequestTemplate(objectMapper, (ObjectNode) objectMapper.readTree(request.path("body").path("raw").asText()));
+            }
+        }
+        throw new IllegalArgumentException("No POST " + path + " in " + collection);
+    }
+
+    String body(int bookId) throws IOException {
+        final ObjectNode requestBody = body.deepCopy();
+        ((ObjectNode) requestBody.path("book")).put("bookId", bookId);
+        return objectMapper.writeValueAsString(requestBody);
+    }
+}
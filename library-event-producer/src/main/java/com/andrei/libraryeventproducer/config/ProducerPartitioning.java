@@ -0,0 +1,35 @@
+package com.andrei.libraryeventproducer.config;
+
+import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.function.IntSupplier;
+
+//How the library-events producers pick a partition. KEY leaves it to the Kafka default partitioner on the library event id.
+//BOOK_AFFINITY sets the partition of Book.bookId on the record, so every event of a book stays in order on one partition;
+//it is computed from the event before serialization, the payload is never decoded again to route it.
+public enum ProducerPartitioning {
+
+    KEY,
+    BOOK_AFFINITY;
+
+    //accepts the property form, e.g. book-affinity
+    public static ProducerPartitioning fromName(String name) {
+        return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    //null lets the configured partitioner decide, the partition count is only looked up for book affinity
+    public Integer partition(LibraryEvent libraryEvent, IntSupplier numPartitions) {
+        if(this == KEY || libraryEvent.getBook() == null || libraryEvent.getBook().getBookId() == null) {
+            return null;
+        }
+        return bookPartition(libraryEvent.getBook().getBookId(), numPartitions.getAsInt());
+    }
+
+    //hashed like an IntegerSerializer key, so a book lands where a record keyed by its bookId would
+    public static int bookPartition(int bookId, int numPartitions) {
+        return Utils.toPositive(Utils.murmur2(ByteBuffer.allocate(Integer.BYTES).putInt(bookId).array())) % numPartitions;
+    }
+}
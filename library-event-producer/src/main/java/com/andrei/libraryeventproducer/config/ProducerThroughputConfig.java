@@ -0,0 +1,39 @@
+package com.andrei.libraryeventproducer.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@Slf4j
+public class ProducerThroughputConfig {
+
+    @Bean
+    public ProducerThroughputProfile producerThroughputProfile(@Value("${library-events.producer.throughput-profile:balanced}") String profile) {
+        final ProducerThroughputProfile producerThroughputProfile = ProducerThroughputProfile.fromName(profile);
+        log.info("Using the {} producer throughput profile", producerThroughputProfile);
+        return producerThroughputProfile;
+    }
+
+    @Bean
+    public ProducerPartitioning producerPartitioning(@Value("${library-events.producer.partitioning:book-affinity}") String partitioning) {
+        final ProducerPartitioning producerPartitioning = ProducerPartitioning.fromName(partitioning);
+        log.info("Using the {} producer partitioning", producerPartitioning);
+        return producerPartitioning;
+    }
+
+    //applies the profile to the auto-configured factory behind the KafkaTemplate of LibraryEventProducer
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer producerThroughputProfileCustomizer(ProducerThroughputProfile producerThroughputProfile) {
+        return producerFactory -> {
+            final Map<String, Object> configs = new HashMap<>(producerFactory.getConfigurationProperties());
+            producerThroughputProfile.applyTo(configs);
+            producerFactory.updateConfigs(configs);
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package com.andrei.libraryeventproducer.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//Named batching/compression presets for the library-events producers. All of them keep acks=all with idempotence,
+//they only trade latency for throughput. Settings given explicitly under spring.kafka.producer win over the preset.
+public enum ProducerThroughputProfile {
+
+    LOW_LATENCY(0, 16 * 1024, "none"),
+    BALANCED(5, 64 * 1024, "lz4"),
+    MAX_THROUGHPUT(20, 256 * 1024, "zstd");
+
+    private final int lingerMs;
+    private final int batchSize;
+    private final String compressionType;
+
+    ProducerThroughputProfile(int lingerMs, int batchSize, String compressionType) {
+        this.lingerMs = lingerMs;
+        this.batchSize = batchSize;
+        this.compressionType = compressionType;
+    }
+
+    //accepts the property form, e.g. max-throughput
+    public static ProducerThroughputProfile fromName(String name) {
+        return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    public Map<String, Object> getProducerConfigs() {
+        final Map<String, Object> configs = new HashMap<>();
+        configs.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configs.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        configs.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        configs.put(ProducerConfig.ACKS_CONFIG, "all");
+        configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        //the idempotent producer keeps ordering with up to 5 in-flight requests per connection
+        configs.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+        return configs;
+    }
+
+    //the preset only fills in what the configuration does not already set
+    public void applyTo(Map<String, Object> producerConfigs) {
+        getProducerConfigs().forEach(producerConfigs::putIfAbsent);
+    }
+}
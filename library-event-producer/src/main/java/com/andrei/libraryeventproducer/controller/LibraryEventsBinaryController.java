@@ -0,0 +1,44 @@
+package com.andrei.libraryeventproducer.controller;
+
+import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import com.andrei.libraryeventproducer.domain.LibraryEventType;
+import com.andrei.libraryeventproducer.id.LibraryEventIdGenerator;
+import com.andrei.libraryeventproducer.producer.LibraryEventBinaryProducer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.validation.Valid;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+public class LibraryEventsBinaryController {
+
+    private final LibraryEventBinaryProducer libraryEventBinaryProducer;
+    private final LibraryEventIdGenerator libraryEventIdGenerator;
+
+    @PostMapping("/v1/library-event-binary")
+    public ResponseEntity<LibraryEvent> postLibraryEvent(@RequestBody @Valid LibraryEvent event) {
+        event.setLibraryEventType(LibraryEventType.NEW);
+        event.setLibraryEventId(libraryEventIdGenerator.nextId());
+        libraryEventBinaryProducer.sendLibraryEvent(event);
+        return ResponseEntity.status(HttpStatus.CREATED).body(event);
+    }
+
+    @PutMapping("/v1/library-event-binary")
+    public ResponseEntity<?> putLibraryEvent(@RequestBody @Valid LibraryEvent event) {
+
+        if(event.getLibraryEventId() == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Please pass the libraryEventId");
+        }
+        event.setLibraryEventType(LibraryEventType.UPDATE);
+        libraryEventBinaryProducer.sendLibraryEvent(event);
+        return ResponseEntity.status(HttpStatus.OK).body(event);
+    }
+}
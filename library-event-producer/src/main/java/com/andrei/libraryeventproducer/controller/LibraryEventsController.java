@@ -2,11 +2,18 @@ package com.andrei.libraryeventproducer.controller;
 
 import com.andrei.libraryeventproducer.domain.LibraryEvent;
 import com.andrei.libraryeventproducer.domain.LibraryEventType;
+import com.andrei.libraryeventproducer.domain.LibraryEventsBulkSummary;
+import com.andrei.libraryeventproducer.id.LibraryEventIdGenerator;
 import com.andrei.libraryeventproducer.producer.LibraryEventProducer;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -14,44 +21,61 @@ import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @RestController
 @RequiredArgsConstructor
 @Slf4j
 public class LibraryEventsController {
 
+    private static final int MAX_REPORTED_REJECTIONS = 1000;
+    private static final int MAX_PENDING_ACKNOWLEDGEMENTS = 10_000;
+    private static final long ACK_TIMEOUT_SECONDS = 1;
+
     private final LibraryEventProducer libraryEventProducer;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final LibraryEventIdGenerator libraryEventIdGenerator;
 
     @PostMapping("/v1/library-event")
     public ResponseEntity<LibraryEvent> postLibraryEvent(@RequestBody LibraryEvent event) throws JsonProcessingException {
-        event.setLibraryEventType(LibraryEventType.NEW);
+        newLibraryEvent(event);
         libraryEventProducer.sendLibraryEvent(event);
         return ResponseEntity.status(HttpStatus.CREATED).body(event);
     }
 
     @PostMapping("/v1/library-event-synchronous")
     public ResponseEntity<LibraryEvent> postLibraryEventSynchronous(@RequestBody LibraryEvent event) throws JsonProcessingException, ExecutionException, InterruptedException, TimeoutException {
-        event.setLibraryEventType(LibraryEventType.NEW);
-        final SendResult<Integer, String> sendResult = libraryEventProducer.sendLibraryEventSynchronousApproach(event);
+        newLibraryEvent(event);
+        final SendResult<Long, String> sendResult = libraryEventProducer.sendLibraryEventSynchronousApproach(event);
         if(sendResult != null) {
-            log.info("sendResult is {}", sendResult.toString());
+            log.debug("sendResult is {}", sendResult);
         }
         return ResponseEntity.status(HttpStatus.CREATED).body(event);
     }
 
     @PostMapping("/v1/library-event-with-topic")
     public ResponseEntity<LibraryEvent> postLibraryEventWithTopic(@RequestBody LibraryEvent event) throws JsonProcessingException{
-        event.setLibraryEventType(LibraryEventType.NEW);
+        newLibraryEvent(event);
         libraryEventProducer.sendLibraryEventWithTopic(event);
         return ResponseEntity.status(HttpStatus.CREATED).body(event);
     }
 
     @PostMapping("/v1/library-event-with-topic-and-header")
     public ResponseEntity<LibraryEvent> postLibraryEventWithTopicAndHeader(@RequestBody @Valid LibraryEvent event) throws JsonProcessingException{
-        event.setLibraryEventType(LibraryEventType.NEW);
+        newLibraryEvent(event);
         libraryEventProducer.sendLibraryEventWithTopicAndHeader(event);
         return ResponseEntity.status(HttpStatus.CREATED).body(event);
     }
@@ -66,4 +90,112 @@ public class LibraryEventsController {
         libraryEventProducer.sendLibraryEventWithTopicAndHeader(event);
         return ResponseEntity.status(HttpStatus.OK).body(event);
     }
+
+    //Same broker acknowledgement as the synchronous endpoint, but the servlet thread is released while waiting for it.
+    //The response is written from the producer callback, so in-flight requests are bounded by connections, not threads.
+    @PostMapping("/v1/library-event-async")
+    public CompletableFuture<ResponseEntity<LibraryEvent>> postLibraryEventAsync(@RequestBody @Valid LibraryEvent event) throws JsonProcessingException {
+        newLibraryEvent(event);
+        return libraryEventProducer.sendLibraryEventWithTopicAndHeader(event).completable()
+                .orTimeout(ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .thenApply(sendResult -> ResponseEntity.status(HttpStatus.CREATED).body(event));
+    }
+
+    @PutMapping("/v1/library-event-async")
+    public CompletableFuture<ResponseEntity<?>> putLibraryEventAsync(@RequestBody @Valid LibraryEvent event) throws JsonProcessingException {
+
+        if(event.getLibraryEventId() == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Please pass the libraryEventId"));
+        }
+        event.setLibraryEventType(LibraryEventType.UPDATE);
+        return libraryEventProducer.sendLibraryEventWithTopicAndHeader(event).completable()
+                .orTimeout(ACK_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .thenApply(sendResult -> ResponseEntity.status(HttpStatus.OK).body(event));
+    }
+
+    //NDJSON or a JSON array of NEW events, parsed one event at a time from the request stream and handed to the producer
+    //as it is read, so memory stays flat whatever the body size. Kafka send back pressure (buffer.memory) slows the upload
+    //down instead. An item counts as accepted once the broker acknowledged it, a failed send is one more rejection.
+    @PostMapping(value = "/v1/library-events/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<LibraryEventsBulkSummary> postLibraryEventsBulk(InputStream body) throws IOException {
+        final LibraryEventsBulkSummary summary = new LibraryEventsBulkSummary();
+        final List<CompletableFuture<?>> acknowledgements = new ArrayList<>();
+        long item = 0;
+        try (MappingIterator<LibraryEvent> events = objectMapper.readerFor(LibraryEvent.class).readValues(body)) {
+            while(true) {
+                final LibraryEvent event;
+                try {
+                    if(!events.hasNextValue()) {
+                        break;
+                    }
+                    item++;
+                    event = events.nextValue();
+                } catch (JsonParseException e) {
+                    //the stream can not be resynchronized after broken JSON, everything before it was already sent
+                    reject(summary, item, events.getCurrentLocation().getLineNr(), "Malformed JSON, ingest stopped: " + e.getOriginalMessage());
+                    break;
+                } catch (JsonMappingException e) {
+                    reject(summary, item, events.getCurrentLocation().getLineNr(), e.getOriginalMessage());
+                    continue;
+                }
+
+                final Set<ConstraintViolation<LibraryEvent>> violations = validator.validate(event);
+                if(!violations.isEmpty()) {
+                    reject(summary, item, events.getCurrentLocation().getLineNr(), violations.stream()
+                            .map(violation -> violation.getPropertyPath() + " - " + violation.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining(", ")));
+                    continue;
+                }
+                //an id would turn the item into an UPDATE of that event, updates go through the PUT endpoints
+                if(event.getLibraryEventId() != null) {
+                    reject(summary, item, events.getCurrentLocation().getLineNr(), "libraryEventId - must be null, bulk ingest only creates events");
+                    continue;
+                }
+                newLibraryEvent(event);
+                acknowledgements.add(acknowledgement(summary, item, events.getCurrentLocation().getLineNr(),
+                        libraryEventProducer.sendLibraryEventWithTopicAndHeader(event).completable()));
+                if(acknowledgements.size() >= MAX_PENDING_ACKNOWLEDGEMENTS) {
+                    acknowledgements.removeIf(CompletableFuture::isDone);
+                }
+            }
+        } finally {
+            libraryEventProducer.flush();
+        }
+        CompletableFuture.allOf(acknowledgements.toArray(CompletableFuture[]::new)).join();
+        log.info("Bulk ingest finished, {} accepted and {} rejected", summary.getAccepted(), summary.getRejected());
+        return ResponseEntity.status(HttpStatus.OK).body(summary);
+    }
+
+    //the id is assigned before the send, so the record is keyed and the caller gets the id back in the response
+    private void newLibraryEvent(LibraryEvent event) {
+        event.setLibraryEventType(LibraryEventType.NEW);
+        event.setLibraryEventId(libraryEventIdGenerator.nextId());
+    }
+
+    private CompletableFuture<?> acknowledgement(LibraryEventsBulkSummary summary, long item, int line,
+                                                 CompletableFuture<SendResult<Long, String>> sendResult) {
+        return sendResult.handle((result, throwable) -> {
+            if(throwable == null) {
+                synchronized(summary) {
+                    summary.setAccepted(summary.getAccepted() + 1);
+                }
+            } else {
+                reject(summary, item, line, "Send failed: " + throwable.getMessage());
+            }
+            return null;
+        });
+    }
+
+    //the send callbacks report from the producer I/O thread while the request thread is still parsing
+    private void reject(LibraryEventsBulkSummary summary, long item, int line, String reason) {
+        synchronized(summary) {
+            summary.setRejected(summary.getRejected() + 1);
+            if(summary.getRejections().size() < MAX_REPORTED_REJECTIONS) {
+                summary.getRejections().add(new LibraryEventsBulkSummary.Rejection(item, line, reason));
+            } else {
+                summary.setRejectionsTruncated(true);
+            }
+        }
+    }
 }
@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import java.util.List;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 @ControllerAdvice
@@ -31,4 +32,10 @@ public class libraryEventControllerAdvice {
 
     }
 
+    @ExceptionHandler(TimeoutException.class)
+    public ResponseEntity<?> handleAckTimeout(TimeoutException ex) {
+        log.error("Timed out waiting for the broker acknowledgement");
+        return new ResponseEntity<>("Timed out waiting for the broker acknowledgement", HttpStatus.GATEWAY_TIMEOUT);
+    }
+
 }
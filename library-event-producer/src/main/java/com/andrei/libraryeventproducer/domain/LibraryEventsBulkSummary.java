@@ -0,0 +1,31 @@
+package com.andrei.libraryeventproducer.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class LibraryEventsBulkSummary {
+
+    private long accepted;
+    private long rejected;
+    //only the first rejections are listed, so a bad file can not grow the response without bound
+    private List<Rejection> rejections = new ArrayList<>();
+    private boolean rejectionsTruncated;
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Data
+    @Builder
+    public static class Rejection {
+        private long item;
+        private int line;
+        private String reason;
+    }
+}
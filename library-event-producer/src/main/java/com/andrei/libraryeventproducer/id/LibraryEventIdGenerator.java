@@ -0,0 +1,76 @@
+package com.andrei.libraryeventproducer.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+//Snowflake style ids for NEW library events, assigned before the send so every record has a key and the consumer
+//never asks the database for one. 41 bits of milliseconds since 2021-01-01, 10 bits of worker id, 12 bits of sequence:
+//ids grow with time and two producer instances never collide as long as their worker ids differ.
+@Component
+@Slf4j
+public class LibraryEventIdGenerator {
+
+    static final long EPOCH = Instant.parse("2021-01-01T00:00:00Z").toEpochMilli();
+    static final int WORKER_ID_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+
+    private final long workerId;
+    private final LongSupplier clock;
+    //the last issued timestamp and sequence packed as timestamp << SEQUENCE_BITS | sequence, so one CAS moves both
+    private final AtomicLong lastState = new AtomicLong();
+
+    @Autowired
+    public LibraryEventIdGenerator(@Value("${library-events.producer.worker-id:-1}") int workerId) {
+        this(workerId >= 0 ? workerId : derivedWorkerId(), System::currentTimeMillis);
+    }
+
+    LibraryEventIdGenerator(int workerId, LongSupplier clock) {
+        if(workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("The worker id must be between 0 and " + MAX_WORKER_ID + " but was " + workerId);
+        }
+        this.workerId = workerId;
+        this.clock = clock;
+    }
+
+    public long nextId() {
+        while(true) {
+            final long previous = lastState.get();
+            final long now = clock.getAsLong() - EPOCH;
+            //within the same millisecond, or with the clock set back, the sequence keeps counting from the last id;
+            //a full sequence carries into the timestamp bits, borrowing the next millisecond instead of spinning
+            final long next = now > previous >>> SEQUENCE_BITS ? now << SEQUENCE_BITS : previous + 1;
+            if(lastState.compareAndSet(previous, next)) {
+                return (next >>> SEQUENCE_BITS) << (WORKER_ID_BITS + SEQUENCE_BITS)
+                        | workerId << SEQUENCE_BITS
+                        | next & ((1L << SEQUENCE_BITS) - 1);
+            }
+        }
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    //without library-events.producer.worker-id two instances may pick the same worker id, set it per instance in production
+    private static int derivedWorkerId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            host = "unknown";
+        }
+        final int derivedWorkerId = Math.floorMod((host + "/" + ManagementFactory.getRuntimeMXBean().getName()).hashCode(), MAX_WORKER_ID + 1);
+        log.warn("library-events.producer.worker-id is not set, using the derived worker id {}", derivedWorkerId);
+        return derivedWorkerId;
+    }
+}
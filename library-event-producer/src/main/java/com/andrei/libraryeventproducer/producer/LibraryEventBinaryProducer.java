@@ -0,0 +1,81 @@
+package com.andrei.libraryeventproducer.producer;
+
+import com.andrei.libraryeventproducer.config.ProducerPartitioning;
+import com.andrei.libraryeventproducer.config.ProducerThroughputProfile;
+import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import com.andrei.libraryeventproducer.logging.SampledLogFilter;
+import com.andrei.libraryeventproducer.serialization.LibraryEventAvroCodec;
+import com.andrei.libraryeventproducer.serialization.LibraryEventHeaders;
+import com.andrei.libraryeventproducer.serialization.LibraryEventSchemaRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.LongSerializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+//Sends library events in the binary avro form, tagged with the format and schema version headers.
+//It has its own byte[] template, so it runs next to the JSON LibraryEventProducer during the rollout.
+@Component
+@Slf4j
+public class LibraryEventBinaryProducer implements DisposableBean {
+
+    private static final String TOPIC_NAME = "library-events";
+
+    private final DefaultKafkaProducerFactory<Long, byte[]> producerFactory;
+    private final KafkaTemplate<Long, byte[]> kafkaTemplate;
+    private final LibraryEventAvroCodec avroCodec;
+    private final ProducerPartitioning producerPartitioning;
+
+    public LibraryEventBinaryProducer(KafkaProperties kafkaProperties, ProducerThroughputProfile producerThroughputProfile,
+                                      ProducerPartitioning producerPartitioning) {
+        final Map<String, Object> producerConfigs = kafkaProperties.buildProducerProperties();
+        producerThroughputProfile.applyTo(producerConfigs);
+        this.producerFactory = new DefaultKafkaProducerFactory<>(producerConfigs, new LongSerializer(), new ByteArraySerializer());
+        this.kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        this.avroCodec = new LibraryEventAvroCodec(LibraryEventSchemaRegistry.fromClasspath());
+        this.producerPartitioning = producerPartitioning;
+    }
+
+    public ListenableFuture<SendResult<Long, byte[]>> sendLibraryEvent(LibraryEvent libraryEvent) {
+        Long key = libraryEvent.getLibraryEventId();
+        byte[] value = avroCodec.encode(libraryEvent);
+
+        final Headers headers = new RecordHeaders();
+        headers.add("event-source", "scanner".getBytes(StandardCharsets.UTF_8));
+        LibraryEventHeaders.setAvroFormat(headers, avroCodec.getSchemaVersion());
+
+        final Integer partition = producerPartitioning.partition(libraryEvent, () -> kafkaTemplate.partitionsFor(TOPIC_NAME).size());
+        final ListenableFuture<SendResult<Long, byte[]>> sendResultListenableFuture =
+                kafkaTemplate.send(new ProducerRecord<>(TOPIC_NAME, partition, null, key, value, headers));
+        sendResultListenableFuture.addCallback(new ListenableFutureCallback<>() {
+            @Override
+            public void onFailure(Throwable throwable) {
+                log.error("Error sending the binary Message and the exception is {}", throwable.getMessage());
+            }
+
+            @Override
+            public void onSuccess(SendResult<Long, byte[]> result) {
+                log.info(SampledLogFilter.SAMPLED, "event=record.sent format=avro key={} bytes={} partition={} offset={}",
+                        key, value.length, result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+            }
+        });
+        return sendResultListenableFuture;
+    }
+
+    @Override
+    public void destroy() {
+        producerFactory.destroy();
+    }
+}
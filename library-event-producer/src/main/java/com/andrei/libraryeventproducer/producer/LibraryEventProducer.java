@@ -1,8 +1,12 @@
 package com.andrei.libraryeventproducer.producer;
 
+import com.andrei.libraryeventproducer.config.ProducerPartitioning;
 import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import com.andrei.libraryeventproducer.logging.SampledLogFilter;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -13,92 +17,155 @@ import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
 
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class LibraryEventProducer {
 
-    private final KafkaTemplate<Integer, String> kafkaTemplate;
+    private final KafkaTemplate<Long, String> kafkaTemplate;
     private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final ProducerPartitioning producerPartitioning;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Map<SendTags, Timer> sendTimers = new ConcurrentHashMap<>();
 
     private static final String TOPIC_NAME = "library-events";
+    private static final String SEND_TIMER = "library.events.producer.send";
 
-    public ListenableFuture<SendResult<Integer, String>> sendLibraryEvent(LibraryEvent libraryEvent) throws JsonProcessingException {
-        Integer key = libraryEvent.getLibraryEventId();
+    @PostConstruct
+    void registerInFlightGauge() {
+        meterRegistry.gauge("library.events.producer.in.flight", inFlight);
+    }
+
+    public ListenableFuture<SendResult<Long, String>> sendLibraryEvent(LibraryEvent libraryEvent) throws JsonProcessingException {
+        Long key = libraryEvent.getLibraryEventId();
         String value = objectMapper.writeValueAsString(libraryEvent);
 
-        final ListenableFuture<SendResult<Integer, String>> sendResultListenableFuture = kafkaTemplate.sendDefault(key, value);
+        final Timer.Sample sample = startSend();
+        final ListenableFuture<SendResult<Long, String>> sendResultListenableFuture = kafkaTemplate.sendDefault(partition(libraryEvent), key, value);
 
-        return getCallbackListenableFuture(key, value, sendResultListenableFuture);
+        return getCallbackListenableFuture(key, value, sendResultListenableFuture, sample, endpoint(), libraryEvent);
     }
 
-    public ListenableFuture<SendResult<Integer, String>>  sendLibraryEventWithTopic(LibraryEvent libraryEvent) throws JsonProcessingException {
-        Integer key = libraryEvent.getLibraryEventId();
+    public ListenableFuture<SendResult<Long, String>>  sendLibraryEventWithTopic(LibraryEvent libraryEvent) throws JsonProcessingException {
+        Long key = libraryEvent.getLibraryEventId();
         String value = objectMapper.writeValueAsString(libraryEvent);
 
-        ProducerRecord<Integer, String> producerRecord = buildProducerRecord(key, value, TOPIC_NAME);
+        ProducerRecord<Long, String> producerRecord = buildProducerRecord(partition(libraryEvent), key, value, TOPIC_NAME);
 
-        return getSendResultListenableFuture(key, value, producerRecord);
+        return getSendResultListenableFuture(key, value, producerRecord, endpoint(), libraryEvent);
     }
 
-    private ProducerRecord<Integer, String> buildProducerRecord(Integer key, String value, String topicName) {
-        return new ProducerRecord<>(TOPIC_NAME, key, value);
+    private ProducerRecord<Long, String> buildProducerRecord(Integer partition, Long key, String value, String topicName) {
+        return new ProducerRecord<>(TOPIC_NAME, partition, key, value);
     }
 
+    private Integer partition(LibraryEvent libraryEvent) {
+        return producerPartitioning.partition(libraryEvent, () -> kafkaTemplate.partitionsFor(TOPIC_NAME).size());
+    }
 
-    public ListenableFuture<SendResult<Integer, String>> sendLibraryEventWithTopicAndHeader(LibraryEvent libraryEvent) throws JsonProcessingException {
-        Integer key = libraryEvent.getLibraryEventId();
+
+    public ListenableFuture<SendResult<Long, String>> sendLibraryEventWithTopicAndHeader(LibraryEvent libraryEvent) throws JsonProcessingException {
+        Long key = libraryEvent.getLibraryEventId();
         String value = objectMapper.writeValueAsString(libraryEvent);
 
-        ProducerRecord<Integer, String> producerRecord = buildProducerRecordWithHeader(key, value, TOPIC_NAME);
+        ProducerRecord<Long, String> producerRecord = buildProducerRecordWithHeader(partition(libraryEvent), key, value, TOPIC_NAME);
 
-        return getSendResultListenableFuture(key, value, producerRecord);
+        return getSendResultListenableFuture(key, value, producerRecord, endpoint(), libraryEvent);
     }
 
-    private ListenableFuture<SendResult<Integer, String>> getSendResultListenableFuture(Integer key, String value, ProducerRecord<Integer, String> producerRecord) {
-        final ListenableFuture<SendResult<Integer, String>> sendResultListenableFuture = kafkaTemplate.send(producerRecord);
+    private ListenableFuture<SendResult<Long, String>> getSendResultListenableFuture(Long key, String value, ProducerRecord<Long, String> producerRecord,
+                                                                                        String endpoint, LibraryEvent libraryEvent) {
+        final Timer.Sample sample = startSend();
+        final ListenableFuture<SendResult<Long, String>> sendResultListenableFuture = kafkaTemplate.send(producerRecord);
 
-        return getCallbackListenableFuture(key, value, sendResultListenableFuture);
+        return getCallbackListenableFuture(key, value, sendResultListenableFuture, sample, endpoint, libraryEvent);
     }
 
-    private ListenableFuture<SendResult<Integer, String>> getCallbackListenableFuture(Integer key, String value, ListenableFuture<SendResult<Integer, String>> sendResultListenableFuture) {
+    private ListenableFuture<SendResult<Long, String>> getCallbackListenableFuture(Long key, String value, ListenableFuture<SendResult<Long, String>> sendResultListenableFuture,
+                                                                                      Timer.Sample sample, String endpoint, LibraryEvent libraryEvent) {
         sendResultListenableFuture.addCallback(new ListenableFutureCallback<>() {
             @Override
             public void onFailure(Throwable throwable) {
+                stopSend(sample, endpoint, libraryEvent, null);
                 handleFailure(key, value, throwable);
             }
 
             @Override
-            public void onSuccess(SendResult<Integer, String> result) {
-
+            public void onSuccess(SendResult<Long, String> result) {
+                stopSend(sample, endpoint, libraryEvent, result);
                 handleSuccess(key, value, result);
             }
         });
         return sendResultListenableFuture;
     }
 
-    private ProducerRecord<Integer, String> buildProducerRecordWithHeader(Integer key, String value, String topicName) {
+    private Timer.Sample startSend() {
+        inFlight.incrementAndGet();
+        return Timer.start(meterRegistry);
+    }
+
+    //send to broker ack, tagged by endpoint, event type, partition and outcome; the partition set is small and fixed,
+    //so one timer per tag set is built once and looked up on later sends
+    private void stopSend(Timer.Sample sample, String endpoint, LibraryEvent libraryEvent, SendResult<Long, String> result) {
+        inFlight.decrementAndGet();
+        final SendTags sendTags = new SendTags(endpoint, String.valueOf(libraryEvent.getLibraryEventType()),
+                result != null && result.getRecordMetadata() != null ? String.valueOf(result.getRecordMetadata().partition()) : "none",
+                result != null ? "success" : "failure");
+        sample.stop(sendTimers.computeIfAbsent(sendTags, tags -> Timer.builder(SEND_TIMER)
+                .tag("endpoint", tags.endpoint())
+                .tag("event.type", tags.eventType())
+                .tag("partition", tags.partition())
+                .tag("outcome", tags.outcome())
+                .register(meterRegistry)));
+    }
+
+    //the method and URI pattern of the handler, as http.server.requests tags it; read on the request thread,
+    //the send callbacks run on the producer I/O thread
+    private static String endpoint() {
+        if(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes servletRequestAttributes) {
+            final HttpServletRequest request = servletRequestAttributes.getRequest();
+            final Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if(pattern != null) {
+                return request.getMethod() + " " + pattern;
+            }
+        }
+        return "none";
+    }
+
+    private ProducerRecord<Long, String> buildProducerRecordWithHeader(Integer partition, Long key, String value, String topicName) {
         List<Header> recordHeaders = List.of(new RecordHeader("event-source", "scanner".getBytes()));
-        log.info("Andrei Headers: {}", recordHeaders);
-        return new ProducerRecord<>(TOPIC_NAME, null, key, value, recordHeaders);
+        log.debug("Andrei Headers: {}", recordHeaders);
+        return new ProducerRecord<>(TOPIC_NAME, partition, null, key, value, recordHeaders);
     }
 
 
-    public SendResult<Integer, String> sendLibraryEventSynchronousApproach(LibraryEvent libraryEvent) throws JsonProcessingException, ExecutionException, InterruptedException, TimeoutException {
-        Integer key = libraryEvent.getLibraryEventId();
+    public SendResult<Long, String> sendLibraryEventSynchronousApproach(LibraryEvent libraryEvent) throws JsonProcessingException, ExecutionException, InterruptedException, TimeoutException {
+        Long key = libraryEvent.getLibraryEventId();
         String value = objectMapper.writeValueAsString(libraryEvent);
-        SendResult<Integer, String> sendResult;
+        SendResult<Long, String> sendResult;
 
 
+        final Timer.Sample sample = startSend();
         try {
-            sendResult = kafkaTemplate.sendDefault(key, value).get(1, TimeUnit.SECONDS);
+            sendResult = kafkaTemplate.sendDefault(partition(libraryEvent), key, value).get(1, TimeUnit.SECONDS);
+            stopSend(sample, endpoint(), libraryEvent, sendResult);
         } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            stopSend(sample, endpoint(), libraryEvent, null);
             log.error("Error Sending the message. Exception is: {}", e.getMessage());
             throw e;
         }
@@ -106,7 +173,12 @@ public class LibraryEventProducer {
         return sendResult;
     }
 
-    private void handleFailure(Integer key, String value, Throwable throwable) {
+    //blocks until every record handed to the template so far has been acknowledged or failed
+    public void flush() {
+        kafkaTemplate.flush();
+    }
+
+    private void handleFailure(Long key, String value, Throwable throwable) {
         log.error("Error sending the Message and the exception is {}", throwable.getMessage());
         try {
             throw throwable;
@@ -115,8 +187,13 @@ public class LibraryEventProducer {
         }
     }
 
-    private void handleSuccess(Integer key, String value, SendResult<Integer, String> result) {
-        log.info("Message Sent Successfully for the key: {} and the value is {}, partition is: {} ", key, value, result.getRecordMetadata().partition());
+    private void handleSuccess(Long key, String value, SendResult<Long, String> result) {
+        log.info(SampledLogFilter.SAMPLED, "event=record.sent key={} partition={} offset={}",
+                key, result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+        log.debug("Message Sent Successfully for the key: {} and the value is {}", key, value);
+    }
+
+    private record SendTags(String endpoint, String eventType, String partition, String outcome) {
     }
 
 }
@@ -0,0 +1,67 @@
+package com.andrei.libraryeventproducer.serialization;
+
+import com.andrei.libraryeventproducer.domain.Book;
+import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+//Writes a library event in the compact binary form of the latest local schema, no field names on the wire.
+public class LibraryEventAvroCodec {
+
+    private final int schemaVersion;
+    private final Schema libraryEventSchema;
+    private final Schema libraryEventTypeSchema;
+    private final Schema bookSchema;
+    private final GenericDatumWriter<GenericRecord> writer;
+
+    public LibraryEventAvroCodec(LibraryEventSchemaRegistry schemaRegistry) {
+        this.schemaVersion = schemaRegistry.latestVersion();
+        this.libraryEventSchema = schemaRegistry.latestSchema();
+        this.libraryEventTypeSchema = nonNull(libraryEventSchema.getField("libraryEventType").schema());
+        this.bookSchema = libraryEventSchema.getField("book").schema();
+        this.writer = new GenericDatumWriter<>(libraryEventSchema);
+    }
+
+    public int getSchemaVersion() {
+        return schemaVersion;
+    }
+
+    public byte[] encode(LibraryEvent libraryEvent) {
+        final Book book = libraryEvent.getBook();
+        final GenericRecord bookRecord = new GenericData.Record(bookSchema);
+        bookRecord.put("bookId", book.getBookId());
+        bookRecord.put("bookName", book.getBookName());
+        bookRecord.put("bookAuthor", book.getBookAuthor());
+
+        final GenericRecord libraryEventRecord = new GenericData.Record(libraryEventSchema);
+        libraryEventRecord.put("libraryEventId", libraryEvent.getLibraryEventId());
+        libraryEventRecord.put("libraryEventType", libraryEvent.getLibraryEventType() != null
+                ? new GenericData.EnumSymbol(libraryEventTypeSchema, libraryEvent.getLibraryEventType().name()) : null);
+        libraryEventRecord.put("book", bookRecord);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(64);
+        final BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(outputStream, null);
+        try {
+            writer.write(libraryEventRecord, encoder);
+            encoder.flush();
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Error encoding the library event " + libraryEvent, e);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static Schema nonNull(Schema unionSchema) {
+        return unionSchema.getTypes().stream()
+                .filter(schema -> schema.getType() != Schema.Type.NULL)
+                .findFirst()
+                .orElseThrow();
+    }
+}
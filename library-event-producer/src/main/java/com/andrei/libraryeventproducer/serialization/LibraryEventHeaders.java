@@ -0,0 +1,51 @@
+package com.andrei.libraryeventproducer.serialization;
+
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+
+//Record headers describing the wire format of a library event. A record without a format header is JSON,
+//which keeps the existing producers and the records already in the topic readable.
+public final class LibraryEventHeaders {
+
+    public static final String FORMAT = "library-event-format";
+    public static final String SCHEMA_VERSION = "library-event-schema-version";
+    public static final String JSON = "json";
+    public static final String AVRO = "avro";
+
+    private LibraryEventHeaders() {
+    }
+
+    public static String format(Headers headers) {
+        final String format = lastValue(headers, FORMAT);
+        return format != null ? format : JSON;
+    }
+
+    public static int schemaVersion(Headers headers) {
+        final String schemaVersion = lastValue(headers, SCHEMA_VERSION);
+        if(schemaVersion == null) {
+            throw new IllegalArgumentException("Missing the " + SCHEMA_VERSION + " header");
+        }
+        return Integer.parseInt(schemaVersion);
+    }
+
+    public static void setFormat(Headers headers, String format) {
+        headers.remove(FORMAT);
+        headers.remove(SCHEMA_VERSION);
+        headers.add(FORMAT, format.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void setAvroFormat(Headers headers, int schemaVersion) {
+        setFormat(headers, AVRO);
+        headers.add(SCHEMA_VERSION, String.valueOf(schemaVersion).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String lastValue(Headers headers, String key) {
+        if(headers == null) {
+            return null;
+        }
+        final Header header = headers.lastHeader(key);
+        return header != null && header.value() != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+}
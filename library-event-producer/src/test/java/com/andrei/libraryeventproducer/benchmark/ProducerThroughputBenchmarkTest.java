@@ -0,0 +1,136 @@
+package com.andrei.libraryeventproducer.benchmark;
+
+import com.andrei.libraryeventproducer.config.ProducerThroughputProfile;
+import com.andrei.libraryeventproducer.domain.Book;
+import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import com.andrei.libraryeventproducer.domain.LibraryEventType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//Sends the same fixed set of library events through every throughput profile and compression codec against an embedded
+//broker and reports records/s, bytes on the wire and p99 send latency. Excluded from the default build, run it with
+//mvn test -Pbenchmark [-Dbenchmark.records=200000]
+@Tag("benchmark")
+@Slf4j
+@EmbeddedKafka(topics = {ProducerThroughputBenchmarkTest.TOPIC_NAME}, partitions = 3)
+class ProducerThroughputBenchmarkTest {
+
+    static final String TOPIC_NAME = "library-events-benchmark";
+    private static final List<String> COMPRESSION_TYPES = List.of("none", "lz4", "zstd", "snappy");
+    private static final int RECORDS = Integer.getInteger("benchmark.records", 50_000);
+    private static final int WARMUP_RECORDS = Math.max(1, RECORDS / 10);
+
+    private static EmbeddedKafkaBroker embeddedKafkaBroker;
+    private static List<String> payloads;
+
+    @BeforeAll
+    static void setUp(EmbeddedKafkaBroker broker) throws Exception {
+        embeddedKafkaBroker = broker;
+        final ObjectMapper objectMapper = new ObjectMapper();
+        payloads = new ArrayList<>();
+        //same payloads on every run, sized like real catalogue entries
+        for(int index = 0; index < 1000; index++) {
+            payloads.add(objectMapper.writeValueAsString(LibraryEvent.builder()
+                    .libraryEventId((long) index)
+                    .libraryEventType(LibraryEventType.NEW)
+                    .book(Book.builder()
+                            .bookId(100_000 + index)
+                            .bookName("Kafka using Spring Boot, volume " + index)
+                            .bookAuthor("Author " + (index % 97))
+                            .build())
+                    .build()));
+        }
+    }
+
+    @Test
+    void benchmarkProfilesAndCompression() throws Exception {
+        final List<String> report = new ArrayList<>();
+        report.add(String.format("%-16s %-8s %12s %14s %12s", "profile", "codec", "records/s", "wire bytes", "p99 ms"));
+        for(ProducerThroughputProfile profile : ProducerThroughputProfile.values()) {
+            for(String compressionType : COMPRESSION_TYPES) {
+                final Result result = run(profile, compressionType);
+                report.add(String.format("%-16s %-8s %12.0f %14.0f %12.2f", profile, compressionType,
+                        result.recordsPerSecond(), result.wireBytes(), result.p99Millis()));
+                assertEquals(0, result.failures(), "failed sends for " + profile + "/" + compressionType);
+                assertTrue(result.recordsPerSecond() > 0);
+            }
+        }
+        log.info("Producer throughput benchmark, {} records per run:\n{}", RECORDS, String.join("\n", report));
+    }
+
+    private Result run(ProducerThroughputProfile profile, String compressionType) throws InterruptedException {
+        final Map<String, Object> configs = KafkaTestUtils.producerProps(embeddedKafkaBroker);
+        configs.putAll(profile.getProducerConfigs());
+        configs.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+
+        try (Producer<Integer, String> producer = new KafkaProducer<>(configs)) {
+            send(producer, WARMUP_RECORDS, new long[WARMUP_RECORDS], new AtomicInteger());
+            final double wireBytesBefore = outgoingBytes(producer);
+
+            final long[] latencies = new long[RECORDS];
+            final AtomicInteger failures = new AtomicInteger();
+            final long start = System.nanoTime();
+            send(producer, RECORDS, latencies, failures);
+            final long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            return new Result(RECORDS / (elapsed / 1e9),
+                    outgoingBytes(producer) - wireBytesBefore,
+                    latencies[(int) Math.ceil(RECORDS * 0.99) - 1] / 1e6,
+                    failures.get());
+        }
+    }
+
+    //open loop, each callback records its own send-to-ack latency
+    private void send(Producer<Integer, String> producer, int records, long[] latencies, AtomicInteger failures) throws InterruptedException {
+        final CountDownLatch acknowledged = new CountDownLatch(records);
+        for(int index = 0; index < records; index++) {
+            final int record = index;
+            final long sentAt = System.nanoTime();
+            producer.send(new ProducerRecord<>(TOPIC_NAME, index, payloads.get(index % payloads.size())), (metadata, exception) -> {
+                latencies[record] = System.nanoTime() - sentAt;
+                if(exception != null) {
+                    failures.incrementAndGet();
+                }
+                acknowledged.countDown();
+            });
+        }
+        producer.flush();
+        assertTrue(acknowledged.await(2, TimeUnit.MINUTES));
+    }
+
+    private double outgoingBytes(Producer<Integer, String> producer) {
+        for(Map.Entry<MetricName, ? extends Metric> metric : producer.metrics().entrySet()) {
+            if("producer-metrics".equals(metric.getKey().group()) && "outgoing-byte-total".equals(metric.getKey().name())) {
+                return ((Number) metric.getValue().metricValue()).doubleValue();
+            }
+        }
+        return 0;
+    }
+
+    private record Result(double recordsPerSecond, double wireBytes, double p99Millis, int failures) {
+    }
+}
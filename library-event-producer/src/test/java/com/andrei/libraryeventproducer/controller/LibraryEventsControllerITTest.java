@@ -4,7 +4,7 @@ import com.andrei.libraryeventproducer.domain.Book;
 import com.andrei.libraryeventproducer.domain.LibraryEvent;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.common.serialization.IntegerDeserializer;
+import org.apache.kafka.common.serialization.LongDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -40,12 +40,12 @@ class LibraryEventsControllerITTest {
     @Autowired
     private EmbeddedKafkaBroker embeddedKafkaBroker;
 
-    private Consumer<Integer, String> kafkaConsumer;
+    private Consumer<Long, String> kafkaConsumer;
 
     @BeforeEach
     void setUp() {
         Map<String, Object> configs = new HashMap<>(KafkaTestUtils.consumerProps("group1", "true", embeddedKafkaBroker));
-        kafkaConsumer = new DefaultKafkaConsumerFactory<>(configs, new IntegerDeserializer(), new StringDeserializer()).createConsumer();
+        kafkaConsumer = new DefaultKafkaConsumerFactory<>(configs, new LongDeserializer(), new StringDeserializer()).createConsumer();
         embeddedKafkaBroker.consumeFromAllEmbeddedTopics(kafkaConsumer);
     }
 
@@ -67,7 +67,7 @@ class LibraryEventsControllerITTest {
         final ResponseEntity<LibraryEvent> responseEntity = restTemplate.exchange("/v1/library-event", HttpMethod.POST, request, LibraryEvent.class);
 
         assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
-        checkReceivedConsumerNEWMessage();
+        checkReceivedConsumerNEWMessage(responseEntity.getBody());
     }
 
     @Test
@@ -83,7 +83,7 @@ class LibraryEventsControllerITTest {
         final ResponseEntity<LibraryEvent> responseEntity = restTemplate.exchange("/v1/library-event-synchronous", HttpMethod.POST, request, LibraryEvent.class);
 
         assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
-        checkReceivedConsumerNEWMessage();
+        checkReceivedConsumerNEWMessage(responseEntity.getBody());
     }
 
     @Test
@@ -99,7 +99,7 @@ class LibraryEventsControllerITTest {
         final ResponseEntity<LibraryEvent> responseEntity = restTemplate.exchange("/v1/library-event-with-topic", HttpMethod.POST, request, LibraryEvent.class);
 
         assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
-        checkReceivedConsumerNEWMessage();
+        checkReceivedConsumerNEWMessage(responseEntity.getBody());
     }
 
     @Test
@@ -117,7 +117,7 @@ class LibraryEventsControllerITTest {
 
         assertEquals(HttpStatus.CREATED, responseEntity.getStatusCode());
 
-        checkReceivedConsumerNEWMessage();
+        checkReceivedConsumerNEWMessage(responseEntity.getBody());
 
     }
 
@@ -127,7 +127,7 @@ class LibraryEventsControllerITTest {
     void putLibraryEventWithTopicAndHeader() {
 
         LibraryEvent libraryEvent = createLibraryEvent();
-        libraryEvent.setLibraryEventId(123);
+        libraryEvent.setLibraryEventId(123L);
 
         HttpHeaders headers = new HttpHeaders();
         headers.set("content-type", MediaType.APPLICATION_JSON.toString());
@@ -143,15 +143,18 @@ class LibraryEventsControllerITTest {
     }
 
     private void checkReceivedConsumerUPDATEMessage() {
-        final ConsumerRecord<Integer, String> singleRecord = KafkaTestUtils.getSingleRecord(kafkaConsumer, "library-events");
+        final ConsumerRecord<Long, String> singleRecord = KafkaTestUtils.getSingleRecord(kafkaConsumer, "library-events");
         String expected = "{\"libraryEventId\":123,\"libraryEventType\":\"UPDATE\",\"book\":{\"bookId\":123,\"bookName\":\"Kafka using Spring Boot\",\"bookAuthor\":\"Andrei\"}}";
         final String value = singleRecord.value();
         assertEquals(expected, value);
     }
 
-    private void checkReceivedConsumerNEWMessage() {
-        final ConsumerRecord<Integer, String> singleRecord = KafkaTestUtils.getSingleRecord(kafkaConsumer, "library-events");
-        String expected = "{\"libraryEventId\":null,\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":123,\"bookName\":\"Kafka using Spring Boot\",\"bookAuthor\":\"Andrei\"}}";
+    //NEW events get their id in the producer, it is the record key and comes back in the response
+    private void checkReceivedConsumerNEWMessage(LibraryEvent created) {
+        assertNotNull(created.getLibraryEventId());
+        final ConsumerRecord<Long, String> singleRecord = KafkaTestUtils.getSingleRecord(kafkaConsumer, "library-events");
+        assertEquals(created.getLibraryEventId(), singleRecord.key());
+        String expected = "{\"libraryEventId\":" + created.getLibraryEventId() + ",\"libraryEventType\":\"NEW\",\"book\":{\"bookId\":123,\"bookName\":\"Kafka using Spring Boot\",\"bookAuthor\":\"Andrei\"}}";
         final String value = singleRecord.value();
         assertEquals(expected, value);
     }
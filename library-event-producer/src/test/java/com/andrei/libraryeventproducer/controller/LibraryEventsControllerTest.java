@@ -2,6 +2,7 @@ package com.andrei.libraryeventproducer.controller;
 
 import com.andrei.libraryeventproducer.domain.Book;
 import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import com.andrei.libraryeventproducer.id.LibraryEventIdGenerator;
 import com.andrei.libraryeventproducer.producer.LibraryEventProducer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
@@ -12,15 +13,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(LibraryEventsController.class)
+@Import(LibraryEventIdGenerator.class)
 @AutoConfigureMockMvc
 class LibraryEventsControllerTest {
 
@@ -154,6 +167,76 @@ class LibraryEventsControllerTest {
         ;
     }
 
+    @Test
+    void postLibraryEventAsync() throws Exception {
+        final String json = mapper.writeValueAsString(createLibraryEvent());
+
+        final SettableListenableFuture<SendResult<Long, String>> future = new SettableListenableFuture<>();
+        future.set(null);
+        when(libraryEventProducer.sendLibraryEventWithTopicAndHeader(ArgumentMatchers.isA(LibraryEvent.class))).thenReturn(future);
+
+        final MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.post("/v1/library-event-async")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.libraryEventType").value("NEW"))
+                .andExpect(jsonPath("$.libraryEventId").isNumber());
+    }
+
+    @Test
+    void putLibraryEventAsync_AckTimeout() throws Exception {
+        final String json = mapper.writeValueAsString(createLibraryEventUpdate());
+
+        //never acknowledged by the broker
+        when(libraryEventProducer.sendLibraryEventWithTopicAndHeader(ArgumentMatchers.isA(LibraryEvent.class))).thenReturn(new SettableListenableFuture<>());
+
+        final MvcResult mvcResult = mockMvc.perform(MockMvcRequestBuilders.put("/v1/library-event-async")
+                .content(json)
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isGatewayTimeout());
+    }
+
+    @Test
+    void postLibraryEventsBulk() throws Exception {
+        final SettableListenableFuture<SendResult<Long, String>> acknowledged = new SettableListenableFuture<>();
+        acknowledged.set(null);
+        final SettableListenableFuture<SendResult<Long, String>> failed = new SettableListenableFuture<>();
+        failed.setException(new TimeoutException("Expiring 1 record(s) for library-events-0"));
+        when(libraryEventProducer.sendLibraryEventWithTopicAndHeader(ArgumentMatchers.isA(LibraryEvent.class))).thenReturn(acknowledged, failed);
+
+        final String ndjson = mapper.writeValueAsString(createLibraryEvent()) + "\n"
+                + mapper.writeValueAsString(createLibraryEventWithoutBook()) + "\n"
+                + "{\"libraryEventId\": \"not a number\"}\n"
+                + mapper.writeValueAsString(createLibraryEventUpdate()) + "\n"
+                + mapper.writeValueAsString(createLibraryEvent()) + "\n";
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/v1/library-events/bulk")
+                .content(ndjson)
+                .contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(1))
+                .andExpect(jsonPath("$.rejected").value(4))
+                .andExpect(jsonPath("$.rejections[0].line").value(2))
+                .andExpect(jsonPath("$.rejections[0].reason").value("book - must not be null"))
+                .andExpect(jsonPath("$.rejections[1].item").value(3))
+                //an item with an id is not sent as an UPDATE
+                .andExpect(jsonPath("$.rejections[2].item").value(4))
+                //the broker never acknowledged the fifth item
+                .andExpect(jsonPath("$.rejections[3].item").value(5))
+                .andExpect(jsonPath("$.rejections[3].reason").value("Send failed: Expiring 1 record(s) for library-events-0"));
+
+        verify(libraryEventProducer, times(2)).sendLibraryEventWithTopicAndHeader(ArgumentMatchers.isA(LibraryEvent.class));
+        verify(libraryEventProducer).flush();
+    }
+
     private LibraryEvent createLibraryEventWithoutBook() {
         return LibraryEvent.builder()
                 .libraryEventId(null)
@@ -193,7 +276,7 @@ class LibraryEventsControllerTest {
                 .build();
 
         return LibraryEvent.builder()
-                .libraryEventId(123)
+                .libraryEventId(123L)
                 .book(book)
                 .build();
     }
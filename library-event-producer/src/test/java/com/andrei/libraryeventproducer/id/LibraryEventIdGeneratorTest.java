@@ -0,0 +1,102 @@
+package com.andrei.libraryeventproducer.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryEventIdGeneratorTest {
+
+    private static final long NOW = LibraryEventIdGenerator.EPOCH + 1_000;
+
+    @Test
+    void nextId_Layout() {
+        final LibraryEventIdGenerator idGenerator = new LibraryEventIdGenerator(5, () -> NOW);
+
+        final long first = idGenerator.nextId();
+        final long second = idGenerator.nextId();
+
+        assertEquals(1_000, first >>> 22);
+        assertEquals(5, (first >>> 12) & LibraryEventIdGenerator.MAX_WORKER_ID);
+        assertEquals(0, first & 0xfff);
+        assertEquals(first + 1, second);
+    }
+
+    @Test
+    void nextId_FullSequenceBorrowsTheNextMillisecond() {
+        final LibraryEventIdGenerator idGenerator = new LibraryEventIdGenerator(5, () -> NOW);
+
+        long id = 0;
+        for(int index = 0; index <= 4096; index++) {
+            id = idGenerator.nextId();
+        }
+
+        assertEquals(1_001, id >>> 22);
+        assertEquals(5, (id >>> 12) & LibraryEventIdGenerator.MAX_WORKER_ID);
+    }
+
+    @Test
+    void nextId_ClockSetBackStillIncreases() {
+        final AtomicLong clock = new AtomicLong(NOW);
+        final LibraryEventIdGenerator idGenerator = new LibraryEventIdGenerator(5, clock::get);
+
+        final long beforeClockChange = idGenerator.nextId();
+        clock.set(NOW - 10_000);
+
+        assertTrue(idGenerator.nextId() > beforeClockChange);
+    }
+
+    @Test
+    void nextId_UniqueAcrossThreadsAndWorkers() throws Exception {
+        final List<LibraryEventIdGenerator> idGenerators = List.of(new LibraryEventIdGenerator(1, System::currentTimeMillis),
+                new LibraryEventIdGenerator(2, System::currentTimeMillis));
+        final Set<Long> ids = ConcurrentHashMap.newKeySet();
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = IntStream.range(0, 8)
+                    .mapToObj(thread -> executorService.submit(() -> {
+                        final LibraryEventIdGenerator idGenerator = idGenerators.get(thread % 2);
+                        for(int index = 0; index < 20_000; index++) {
+                            ids.add(idGenerator.nextId());
+                        }
+                    }))
+                    .collect(Collectors.toList());
+            for(Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(160_000, ids.size());
+    }
+
+    @Test
+    void nextId_IncreasingWithinAGenerator() {
+        final LibraryEventIdGenerator idGenerator = new LibraryEventIdGenerator(0, System::currentTimeMillis);
+        final Set<Long> ids = new HashSet<>();
+
+        long previous = -1;
+        for(int index = 0; index < 10_000; index++) {
+            final long id = idGenerator.nextId();
+            assertTrue(id > previous);
+            ids.add(id);
+            previous = id;
+        }
+        assertEquals(10_000, ids.size());
+    }
+
+    @Test
+    void workerIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new LibraryEventIdGenerator(1024, System::currentTimeMillis));
+    }
+}
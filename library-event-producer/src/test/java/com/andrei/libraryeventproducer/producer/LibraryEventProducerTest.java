@@ -1,13 +1,19 @@
 package com.andrei.libraryeventproducer.producer;
 
+import com.andrei.libraryeventproducer.config.ProducerPartitioning;
 import com.andrei.libraryeventproducer.domain.Book;
 import com.andrei.libraryeventproducer.domain.LibraryEvent;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.SettableAnyProperty;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.IntegerSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,12 +21,18 @@ import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.SettableListenableFuture;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
 
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -31,45 +43,66 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class LibraryEventProducerTest {
 
-    @InjectMocks
     private LibraryEventProducer libraryEventProducer;
 
     @Mock
-    private KafkaTemplate<Integer, String> kafkaTemplate;
+    private KafkaTemplate<Long, String> kafkaTemplate;
 
     @Spy
     private ObjectMapper objectMapper = new ObjectMapper();
 
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     private SettableListenableFuture future;
     private LibraryEvent libraryEvent;
 
     @BeforeEach
     void setUp() {
+        libraryEventProducer = new LibraryEventProducer(kafkaTemplate, objectMapper, meterRegistry, ProducerPartitioning.BOOK_AFFINITY);
+        when(kafkaTemplate.partitionsFor("library-events")).thenReturn(IntStream.range(0, 3)
+                .mapToObj(partition -> new PartitionInfo("library-events", partition, null, null, null))
+                .collect(Collectors.toList()));
         future = new SettableListenableFuture();
         libraryEvent = createLibraryEvent();
     }
 
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
     @Test
     void sendLibraryEvent_Success() throws JsonProcessingException, ExecutionException, InterruptedException, TimeoutException {
 
-        SendResult<Integer, String> sendResult = getSendResult();
+        SendResult<Long, String> sendResult = getSendResult();
         future.set(sendResult);
 
-        lenient().when(kafkaTemplate.sendDefault(anyInt(), anyString())).thenReturn(future);
+        lenient().when(kafkaTemplate.sendDefault(anyInt(), anyLong(), anyString())).thenReturn(future);
+
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/v1/library-event");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/v1/library-event");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
 
-        libraryEvent.setLibraryEventId(123);
-        final ListenableFuture<SendResult<Integer, String>> sendResultListenableFuture = libraryEventProducer.sendLibraryEvent(libraryEvent);
+        libraryEvent.setLibraryEventId(123L);
+        final ListenableFuture<SendResult<Long, String>> sendResultListenableFuture = libraryEventProducer.sendLibraryEvent(libraryEvent);
+        libraryEventProducer.sendLibraryEvent(libraryEvent);
 
-        final SendResult<Integer, String> sendResult1 = sendResultListenableFuture.get();
+        final SendResult<Long, String> sendResult1 = sendResultListenableFuture.get();
 
         assertEquals(1, sendResult1.getRecordMetadata().partition());
+        assertEquals(2, meterRegistry.get("library.events.producer.send")
+                .tag("endpoint", "POST /v1/library-event")
+                .tag("partition", "1")
+                .tag("outcome", "success")
+                .timer().count());
     }
 
     @Test
     void sendLibraryEvent_Failure() {
         future.setException(new RuntimeException("Exception Calling Kafka"));
 
-        when(kafkaTemplate.sendDefault(anyInt(), anyString())).thenReturn(future);
+        when(kafkaTemplate.sendDefault(anyInt(), anyLong(), anyString())).thenReturn(future);
 
         assertThrows(Exception.class, () -> libraryEventProducer.sendLibraryEvent(createLibraryEvent()).get());
     }
@@ -77,16 +110,21 @@ class LibraryEventProducerTest {
     @Test
     void sendLibraryEventWithTopic_Success() throws JsonProcessingException, ExecutionException, InterruptedException {
 
-        SendResult<Integer, String> sendResult = getSendResult();
+        SendResult<Long, String> sendResult = getSendResult();
         future.set(sendResult);
 
         when(kafkaTemplate.send(isA(ProducerRecord.class))).thenReturn(future);
 
-        final ListenableFuture<SendResult<Integer, String>> sendResultListenableFuture = libraryEventProducer.sendLibraryEventWithTopic(createLibraryEvent());
+        final ListenableFuture<SendResult<Long, String>> sendResultListenableFuture = libraryEventProducer.sendLibraryEventWithTopic(createLibraryEvent());
 
-        final SendResult<Integer, String> sendResult1 = sendResultListenableFuture.get();
+        final SendResult<Long, String> sendResult1 = sendResultListenableFuture.get();
 
         assertEquals(1, sendResult1.getRecordMetadata().partition());
+        //the record carries the partition of its book, the same one a record keyed by the bookId gets
+        final ArgumentCaptor<ProducerRecord<Long, String>> producerRecord = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(producerRecord.capture());
+        assertEquals(Utils.toPositive(Utils.murmur2(new IntegerSerializer().serialize("library-events", 123))) % 3,
+                producerRecord.getValue().partition());
     }
 
     @Test
@@ -101,14 +139,14 @@ class LibraryEventProducerTest {
     @Test
     void sendLibraryEventWithTopicAndHeader_Success() throws JsonProcessingException, ExecutionException, InterruptedException {
 
-        SendResult<Integer, String> sendResult = getSendResult();
+        SendResult<Long, String> sendResult = getSendResult();
         future.set(sendResult);
 
         when(kafkaTemplate.send(isA(ProducerRecord.class))).thenReturn(future);
 
-        final ListenableFuture<SendResult<Integer, String>> sendResultListenableFuture = libraryEventProducer.sendLibraryEventWithTopicAndHeader(createLibraryEvent());
+        final ListenableFuture<SendResult<Long, String>> sendResultListenableFuture = libraryEventProducer.sendLibraryEventWithTopicAndHeader(createLibraryEvent());
 
-        final SendResult<Integer, String> sendResult1 = sendResultListenableFuture.get();
+        final SendResult<Long, String> sendResult1 = sendResultListenableFuture.get();
 
         assertEquals(1, sendResult1.getRecordMetadata().partition());
     }
@@ -127,13 +165,13 @@ class LibraryEventProducerTest {
     @Test
     void sendLibraryEventSynchronousApproach_Success() throws JsonProcessingException, ExecutionException, InterruptedException, TimeoutException {
 
-        SendResult<Integer, String> sendResult = getSendResult();
+        SendResult<Long, String> sendResult = getSendResult();
         future.set(sendResult);
 
-        lenient().when(kafkaTemplate.sendDefault(anyInt(), anyString())).thenReturn(future);
+        lenient().when(kafkaTemplate.sendDefault(anyInt(), anyLong(), anyString())).thenReturn(future);
 
-        libraryEvent.setLibraryEventId(123);
-        final SendResult<Integer, String> sendResult1 = libraryEventProducer.sendLibraryEventSynchronousApproach(libraryEvent);
+        libraryEvent.setLibraryEventId(123L);
+        final SendResult<Long, String> sendResult1 = libraryEventProducer.sendLibraryEventSynchronousApproach(libraryEvent);
 
         assertEquals(1, sendResult1.getRecordMetadata().partition());
     }
@@ -142,7 +180,7 @@ class LibraryEventProducerTest {
     void sendLibraryEventSynchronousApproach_Failure() {
         future.setException(new RuntimeException("Exception Calling Kafka"));
 
-        when(kafkaTemplate.sendDefault(anyInt(), anyString())).thenReturn(future);
+        when(kafkaTemplate.sendDefault(anyInt(), anyLong(), anyString())).thenReturn(future);
 
         assertThrows(Exception.class, () -> libraryEventProducer.sendLibraryEventSynchronousApproach(createLibraryEvent()));
     }
@@ -160,10 +198,10 @@ class LibraryEventProducerTest {
                 .build();
     }
 
-    private SendResult<Integer, String> getSendResult() throws JsonProcessingException {
+    private SendResult<Long, String> getSendResult() throws JsonProcessingException {
         final String record = objectMapper.writeValueAsString(libraryEvent);
 
-        ProducerRecord<Integer, String> producerRecord = new ProducerRecord("library-events", libraryEvent.getLibraryEventId(), record);
+        ProducerRecord<Long, String> producerRecord = new ProducerRecord("library-events", libraryEvent.getLibraryEventId(), record);
         RecordMetadata recordMetadata = new RecordMetadata(new TopicPartition("library-events", 1),
                 1, 1, 123, System.currentTimeMillis(), 1, 2);
 
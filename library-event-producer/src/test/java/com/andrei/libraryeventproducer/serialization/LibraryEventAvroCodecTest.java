@@ -0,0 +1,49 @@
+package com.andrei.libraryeventproducer.serialization;
+
+import com.andrei.libraryeventproducer.domain.Book;
+import com.andrei.libraryeventproducer.domain.LibraryEvent;
+import com.andrei.libraryeventproducer.domain.LibraryEventType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibraryEventAvroCodecTest {
+
+    private final LibraryEventSchemaRegistry schemaRegistry = LibraryEventSchemaRegistry.fromClasspath();
+    private final LibraryEventAvroCodec avroCodec = new LibraryEventAvroCodec(schemaRegistry);
+
+    @Test
+    void encode() throws Exception {
+        final LibraryEvent libraryEvent = createLibraryEvent();
+
+        final byte[] bytes = avroCodec.encode(libraryEvent);
+
+        final GenericRecord record = new GenericDatumReader<GenericRecord>(schemaRegistry.latestSchema())
+                .read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+        final GenericRecord book = (GenericRecord) record.get("book");
+        assertEquals(123L, record.get("libraryEventId"));
+        assertEquals("UPDATE", record.get("libraryEventType").toString());
+        assertEquals(456, book.get("bookId"));
+        assertEquals("Kafka using Spring Boot", book.get("bookName").toString());
+        assertEquals("Andrei", book.get("bookAuthor").toString());
+        assertTrue(bytes.length < new ObjectMapper().writeValueAsBytes(libraryEvent).length / 2);
+    }
+
+    private LibraryEvent createLibraryEvent() {
+        Book book = Book.builder()
+                .bookId(456)
+                .bookAuthor("Andrei")
+                .bookName("Kafka using Spring Boot")
+                .build();
+
+        return LibraryEvent.builder()
+                .libraryEventId(123L)
+                .libraryEventType(LibraryEventType.UPDATE)
+                .book(book)
+                .build();
+    }
+}